@@ -3,11 +3,14 @@ package tech.bts.cardgame;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import tech.bts.cardgame.repository.GameRepository;
 import tech.bts.cardgame.service.GameService;
 
-@SpringBootApplication
+// The repositories open their own connections (see GameRepositoryConfig), only for the backend in use
+@SpringBootApplication(exclude = {DataSourceAutoConfiguration.class, MongoAutoConfiguration.class})
 public class Application {
 
     public static void main(String[] args) {
@@ -5,6 +5,7 @@ import org.springframework.jdbc.datasource.init.ScriptUtils;
 import tech.bts.cardgame.util.DataSourceUtil;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
 import java.sql.SQLException;
 
 public class InsertGamesSampleData {
@@ -12,6 +13,9 @@ public class InsertGamesSampleData {
     public static void main(String[] args) throws SQLException {
 
         DataSource dataSource = DataSourceUtil.getDataSourceInPath();
-        ScriptUtils.executeSqlScript(dataSource.getConnection(), new ClassPathResource("sql-scripts/sample-data.sql"));
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql-scripts/schema.sql"));
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql-scripts/sample-data.sql"));
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package tech.bts.cardgame;
 
-import tech.bts.cardgame.repository.GameRepository;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryJdbc;
 import tech.bts.cardgame.util.DataSourceUtil;
 
 import javax.sql.DataSource;
@@ -8,6 +9,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.stream.Stream;
 
 /**
  * Program that reads and displays the games from the database
@@ -18,25 +20,27 @@ public class ReadGamesJdbcExample {
     public static void main(String... args) throws SQLException {
 
         DataSource dataSource = DataSourceUtil.getDataSourceInPath();
-        Connection connection = dataSource.getConnection();
-        Statement statement = connection.createStatement();
-        ResultSet rs = statement.executeQuery("select * from games");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             // The names of the players are in game_players
+             ResultSet rs = statement.executeQuery("select g.id, g.state, group_concat(p.name order by p.slot) players "
+                     + "from games g left join game_players p on p.game_id = g.id group by g.id, g.state order by g.id")) {
 
-        while (rs.next()) {
+            while (rs.next()) {
 
-            int id = rs.getInt("id");
-            String state = rs.getString("state");
-            String players = rs.getString("players");
+                int id = rs.getInt("id");
+                String state = rs.getString("state");
+                String players = rs.getString("players");
 
-            System.out.println(id + ", " + state + ", " + players);
+                System.out.println(id + ", " + state + ", " + players);
 
+            }
         }
 
-        rs.close();
-        statement.close();
-        connection.close();
-
-        System.out.println(new GameRepository().getAll());
-        System.out.println(new GameRepository().getById(0));
+        // The stream holds a connection until it is closed
+        try (Stream<Game> games = new GameRepositoryJdbc().getAll()) {
+            games.forEach(System.out::println);
+        }
+        System.out.println(new GameRepositoryJdbc().getById(0));
     }
 }
\ No newline at end of file
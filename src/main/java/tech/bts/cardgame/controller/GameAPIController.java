@@ -1,38 +1,175 @@
 package tech.bts.cardgame.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tech.bts.cardgame.controller.errors.GameNotExistsException;
+import tech.bts.cardgame.controller.errors.InvalidPageSizeException;
 import tech.bts.cardgame.model.Card;
 import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
 import tech.bts.cardgame.model.GameUser;
+import tech.bts.cardgame.service.GameEvents;
 import tech.bts.cardgame.service.GameService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(path = "/api/games")
 public class GameAPIController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int MAXIMUM_PAGE_SIZE = 1000;
+
     private GameService gameService;
+    private GameEvents gameEvents;
+
+    private ObjectWriter summaryWriter;
 
     @Autowired
-    public GameAPIController(GameService gameService) {
+    public GameAPIController(GameService gameService, GameEvents gameEvents, ObjectMapper objectMapper) {
         this.gameService = gameService;
+        this.gameEvents = gameEvents;
+        this.summaryWriter = objectMapper.writerFor(GameSummary.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
+    /**
+     * Writes the summaries of the games to the response while they are read, so memory doesn't grow with
+     * the number of games. With a limit, see getGamesPage.
+     * The ETag is the version of the lists of games: with it in If-None-Match, the answer is 304 until a game changes.
+     */
     @RequestMapping(method = RequestMethod.GET)
-    public List<Game> getGames(){
-        return gameService.getGames();
+    public ResponseEntity<StreamingResponseBody> getGames(@RequestParam(required = false) Game.State state,
+                                                          @RequestParam(required = false) String player,
+                                                          @RequestParam(defaultValue = "0") long createdAfter,
+                                                          @RequestParam(defaultValue = "false") boolean newestFirst,
+                                                          @RequestParam(defaultValue = "0") long after,
+                                                          WebRequest request){
+        if (request.checkNotModified(gameService.getGamesVersion())) {
+            return null;
+        }
+        GameSearch gameSearch = search(state, player, createdAfter, newestFirst, after);
+        StreamingResponseBody body = out -> {
+            try (Stream<GameSummary> games = gameService.streamGameSummaries(gameSearch);
+                 JsonGenerator generator = summaryWriter.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                Iterator<GameSummary> iterator = games.iterator();
+                while (iterator.hasNext()) {
+                    summaryWriter.writeValue(generator, iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /**
+     * At most limit games after the id after, in the order of the search. If there may be more,
+     * the X-Next-Cursor header has the value of after for the next page.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "limit")
+    public ResponseEntity<List<GameSummary>> getGamesPage(@RequestParam(required = false) Game.State state,
+                                                          @RequestParam(required = false) String player,
+                                                          @RequestParam(defaultValue = "0") long createdAfter,
+                                                          @RequestParam(defaultValue = "false") boolean newestFirst,
+                                                          @RequestParam(defaultValue = "0") long after,
+                                                          @RequestParam int limit,
+                                                          WebRequest request){
+        if (limit < 1 || limit > MAXIMUM_PAGE_SIZE) {
+            throw new InvalidPageSizeException();
+        }
+        if (request.checkNotModified(gameService.getGamesVersion())) {
+            return null;
+        }
+        List<GameSummary> games = gameService.getGameSummaries(search(state, player, createdAfter, newestFirst, after).setLimit(limit));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (games.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(games.get(games.size() - 1).getId()));
+        }
+        return response.body(games);
+    }
+
+    private GameSearch search(Game.State state, String player, long createdAfter, boolean newestFirst, long after) {
+        return new GameSearch().setState(state).setPlayer(player).setCreatedAfter(createdAfter)
+                .setNewestFirst(newestFirst).setAfterId(after);
     }
 
+    /**
+     * The ETag is the version of the game, so If-None-Match is answered with 304 without copying the game;
+     * a game sent has the ETag of its copy, in case it was played meanwhile.
+     */
     @RequestMapping(method = RequestMethod.GET, path = "/{gameId}")
-    public Game getGameById(@PathVariable long gameId){
-        return gameService.getGameById(gameId);
+    public Game getGameById(@PathVariable long gameId, WebRequest request, HttpServletResponse response){
+        Long version = gameService.getGameVersion(gameId);
+        if (version == null) {
+            throw new GameNotExistsException();
+        }
+        if (request.checkNotModified(String.valueOf(version))) {
+            return null;
+        }
+        Game game = gameService.getGameById(gameId);
+        if (game.getVersion() != version) {
+            response.setHeader(HttpHeaders.ETAG, "\"" + game.getVersion() + "\"");
+        }
+        return game;
+    }
+
+    /**
+     * The event log of the game, e.g. to audit or replay it. The memory repository only keeps the latest versions
+     * since the last restart, and only until the game finishes (see GameRepositoryMap).
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/{gameId}/history")
+    public List<GameEvent> getGameHistory(@PathVariable long gameId) {
+        if (gameService.getGameVersion(gameId) == null) {
+            throw new GameNotExistsException();
+        }
+        return gameService.getGameHistory(gameId);
+    }
+
+    /** The game as it was at a past version, replayed from its event log. */
+    @RequestMapping(method = RequestMethod.GET, path = "/{gameId}/versions/{version}")
+    public Game getGameAt(@PathVariable long gameId, @PathVariable long version) {
+        Game game = gameService.getGameAt(gameId, version);
+        if (game == null) {
+            throw new GameNotExistsException();
+        }
+        return game;
+    }
+
+    /** Server-sent events with the summary of every game created or whose state or players change. */
+    @RequestMapping(method = RequestMethod.GET, path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void getLobbyEvents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        gameEvents.subscribeToLobby(request, response);
+    }
+
+    /** Server-sent events with the changes of the game, see GameEvents. */
+    @RequestMapping(method = RequestMethod.GET, path = "/{gameId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void getGameEvents(@PathVariable long gameId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (gameService.getGameVersion(gameId) == null) {
+            throw new GameNotExistsException();
+        }
+        gameEvents.subscribe(gameId, request, response);
     }
 
     @RequestMapping(method = RequestMethod.POST)
-    public long createGame() {
-        Game game = gameService.createGame();
+    public long createGame(@RequestParam(required = false) Long seed) {
+        Game game = seed != null ? gameService.createGame(seed) : gameService.createGame();
         return game.getId();
     }
 
@@ -47,4 +184,16 @@ public class GameAPIController {
         gameUser.setGameId(gameId);
         return gameService.pickCard(gameUser);
     }
-}
\ No newline at end of file
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/{gameId}/keep")
+    public void keep(@RequestBody GameUser gameUser, @PathVariable("gameId") long gameId){
+        gameUser.setGameId(gameId);
+        gameService.keep(gameUser);
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/{gameId}/discard")
+    public void discard(@RequestBody GameUser gameUser, @PathVariable("gameId") long gameId){
+        gameUser.setGameId(gameId);
+        gameService.discard(gameUser);
+    }
+}
@@ -8,9 +8,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
 import tech.bts.cardgame.model.GameUser;
 import tech.bts.cardgame.service.GameService;
-import tech.bts.cardgame.util.HandlebarsUtil;
 
 import javax.servlet.http.HttpServletResponse;
 import java.awt.*;
@@ -18,30 +19,37 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(path = "/games")
 public class GameWebController {
 
     private GameService gameService;
+    private TemplateCache templates;
 
     @Autowired
-    public GameWebController(GameService gameService) {
+    public GameWebController(GameService gameService, TemplateCache templates) {
         this.gameService = gameService;
+        this.templates = templates;
     }
 
+    /** Writes the list to the response while the summaries are read, without building the page in memory. */
     @RequestMapping(method = RequestMethod.GET)
-    public String displayGames() throws IOException {
-        Template template = HandlebarsUtil.compile("games");
-        Map<String, Object> map = new HashMap<>();
-        map.put("games", gameService.getGames());
-        return template.apply(map);
+    public void displayGames(HttpServletResponse response) throws IOException {
+        Template template = templates.compile("games");
+        try (Stream<GameSummary> games = gameService.streamGameSummaries(new GameSearch())) {
+            Map<String, Object> map = new HashMap<>();
+            // The each helper iterates once
+            map.put("games", (Iterable<GameSummary>) games::iterator);
+            render(template, map, response);
+        }
     }
 
     @RequestMapping(method = RequestMethod.GET, path = "/{gameId}")
-    public String displayGameById(@PathVariable long gameId) throws IOException {
+    public void displayGameById(@PathVariable long gameId, HttpServletResponse response) throws IOException {
         Game game = gameService.getGameById(gameId);
-        Template template = HandlebarsUtil.compile("detailGame");
+        Template template = templates.compile("detailGame");
         Map<String, Object> map = new HashMap<>();
         map.put("game", game);
         map.put("isOpen", game.getState() == Game.State.OPEN);
@@ -51,7 +59,13 @@ public class GameWebController {
         //    result += "<button onclick= location.href=\"/games/" + game.getId() + "/joinString\">Join this game</button>";
         //}
 
-        return template.apply(map);
+        render(template, map, response);
+    }
+
+    private void render(Template template, Map<String, Object> map, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.TEXT_HTML_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        template.apply(map, response.getWriter());
     }
 
     @RequestMapping(method = RequestMethod.GET, path = "/create")
@@ -0,0 +1,38 @@
+package tech.bts.cardgame.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import tech.bts.cardgame.controller.errors.InvalidUsernameException;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameUser;
+import tech.bts.cardgame.service.MatchmakingService;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping(path = "/api/matchmaking")
+public class MatchmakingController {
+
+    private MatchmakingService matchmakingService;
+
+    @Autowired
+    public MatchmakingController(MatchmakingService matchmakingService) {
+        this.matchmakingService = matchmakingService;
+    }
+
+    /**
+     * Answers with the id of the game the player was put in, once another player is found. If the request times
+     * out, posting again waits for the same game.
+     */
+    @RequestMapping(method = RequestMethod.POST)
+    public CompletableFuture<Long> findGame(@RequestBody GameUser gameUser) {
+        if (gameUser.getUsername() == null || gameUser.getUsername().trim().isEmpty()
+                || gameUser.getUsername().length() > Game.MAXIMUM_NAME_LENGTH) {
+            throw new InvalidUsernameException();
+        }
+        return matchmakingService.enqueue(gameUser.getUsername());
+    }
+}
@@ -0,0 +1,33 @@
+package tech.bts.cardgame.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import tech.bts.cardgame.metrics.MetricsSource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping(path = "/api/metrics")
+public class MetricsController {
+
+    private List<MetricsSource> metricsSources;
+
+    @Autowired
+    public MetricsController(@Autowired(required = false) List<MetricsSource> metricsSources) {
+        this.metricsSources = metricsSources != null ? metricsSources : Collections.emptyList();
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    public Map<String, Map<String, Number>> getMetrics() {
+        Map<String, Map<String, Number>> metrics = new TreeMap<>();
+        for (MetricsSource source : metricsSources) {
+            metrics.put(source.getMetricsName(), source.getMetrics());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,74 @@
+package tech.bts.cardgame.controller;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
+import com.github.jknack.handlebars.io.TemplateLoader;
+import com.github.jknack.handlebars.io.TemplateSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the templates of src/main/resources/templates once and keeps them.
+ * With reload on (e.g. in development), a template is compiled again when its file changes.
+ */
+@Component
+public class TemplateCache {
+
+    private final TemplateLoader loader;
+    private final Handlebars handlebars;
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+    private final boolean reload;
+
+    @Autowired
+    public TemplateCache(@Value("${cardgame.templates.reload:false}") boolean reload) {
+        this.loader = new ClassPathTemplateLoader();
+        this.loader.setPrefix("/templates");
+        this.loader.setSuffix(".html.hbs");
+        this.handlebars = new Handlebars(loader);
+        this.reload = reload;
+    }
+
+    public Template compile(String templateName) throws IOException {
+        if (!reload) {
+            CompiledTemplate compiled = templates.get(templateName);
+            if (compiled != null) {
+                return compiled.template;
+            }
+        }
+        // Handlebars' own template cache reads the modification time of a cached template only when it checks it
+        TemplateSource source = loader.sourceAt(templateName);
+        long lastModified = source.lastModified();
+        try {
+            return templates.compute(templateName, (name, compiled) -> {
+                if (compiled != null && (!reload || compiled.lastModified == lastModified)) {
+                    return compiled;
+                }
+                try {
+                    return new CompiledTemplate(handlebars.compile(source), lastModified);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).template;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class CompiledTemplate {
+
+        private final Template template;
+        private final long lastModified;
+
+        CompiledTemplate(Template template, long lastModified) {
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+}
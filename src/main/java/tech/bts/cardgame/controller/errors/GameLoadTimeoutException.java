@@ -0,0 +1,8 @@
+package tech.bts.cardgame.controller.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "game took too long to load")
+public class GameLoadTimeoutException extends RuntimeException {
+}
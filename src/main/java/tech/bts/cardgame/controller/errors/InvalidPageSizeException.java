@@ -0,0 +1,8 @@
+package tech.bts.cardgame.controller.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "limit must be between 1 and 1000")
+public class InvalidPageSizeException extends RuntimeException {
+}
@@ -0,0 +1,8 @@
+package tech.bts.cardgame.controller.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "username is required, at most 50 characters")
+public class InvalidUsernameException extends RuntimeException {
+}
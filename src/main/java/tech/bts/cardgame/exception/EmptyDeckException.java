@@ -0,0 +1,4 @@
+package tech.bts.cardgame.exception;
+
+public class EmptyDeckException extends RuntimeException {
+}
@@ -0,0 +1,5 @@
+package tech.bts.cardgame.exception;
+
+public class UsernameTooLongException extends RuntimeException{
+
+}
@@ -0,0 +1,77 @@
+package tech.bts.cardgame.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a Hikari connection pool (set it with HikariConfig.setMetricsTrackerFactory).
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, MetricsSource {
+
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder connectionCreationMillis = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder connectionAcquireNanos = new LongAdder();
+    private final LongAdder connectionUsageMillis = new LongAdder();
+    private final LongAdder connectionTimeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long millis) {
+                connectionsCreated.increment();
+                connectionCreationMillis.add(millis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long nanos) {
+                connectionsAcquired.increment();
+                connectionAcquireNanos.add(nanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long millis) {
+                connectionUsageMillis.add(millis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                connectionTimeouts.increment();
+            }
+        };
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "connectionPool";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            metrics.put("active", stats.getActiveConnections());
+            metrics.put("idle", stats.getIdleConnections());
+            metrics.put("total", stats.getTotalConnections());
+            metrics.put("max", stats.getMaxConnections());
+            metrics.put("pendingThreads", stats.getPendingThreads());
+        }
+        long acquired = connectionsAcquired.sum();
+        metrics.put("connectionsCreated", connectionsCreated.sum());
+        metrics.put("connectionCreationMillis", connectionCreationMillis.sum());
+        metrics.put("connectionsAcquired", acquired);
+        metrics.put("averageAcquireMicros", acquired == 0 ? 0 : connectionAcquireNanos.sum() / acquired / 1000);
+        metrics.put("averageUsageMillis", acquired == 0 ? 0 : (double) connectionUsageMillis.sum() / acquired);
+        metrics.put("connectionTimeouts", connectionTimeouts.sum());
+        return metrics;
+    }
+}
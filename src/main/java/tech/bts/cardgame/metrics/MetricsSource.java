@@ -0,0 +1,13 @@
+package tech.bts.cardgame.metrics;
+
+import java.util.Map;
+
+/**
+ * Component that reports metrics in /api/metrics, under its name.
+ */
+public interface MetricsSource {
+
+    String getMetricsName();
+
+    Map<String, Number> getMetrics();
+}
@@ -2,14 +2,56 @@ package tech.bts.cardgame.model;
 
 public class Card {
 
-    private int magicPoint;
-    private int strengthPoint;
-    private int intelligencePoint;
+    public final static int POINTS = 10;
+    public final static int MAXIMUM_MAGIC = POINTS - 2;
+
+    /** Number of legal cards: every (magic, strength, intelligence) triple with values >= 1 that add up to 10. */
+    public final static int COUNT = (MAXIMUM_MAGIC * (MAXIMUM_MAGIC + 1)) / 2;
+
+    private static final Card[] CARDS = new Card[COUNT];
+    private static final int[] MAGIC_OFFSETS = new int[MAXIMUM_MAGIC + 2];
+
+    static {
+        int index = 0;
+        for (int magicPoint = 1; magicPoint <= MAXIMUM_MAGIC; magicPoint++) {
+            MAGIC_OFFSETS[magicPoint] = index;
+            for (int strengthPoint = 1; strengthPoint <= (POINTS - 1 - magicPoint); strengthPoint++) {
+                int intelligencePoint = POINTS - magicPoint - strengthPoint;
+                CARDS[index] = new Card(magicPoint, strengthPoint, intelligencePoint, index);
+                index++;
+            }
+        }
+        MAGIC_OFFSETS[MAXIMUM_MAGIC + 1] = index;
+    }
+
+    private final int magicPoint;
+    private final int strengthPoint;
+    private final int intelligencePoint;
+    private final int index;
 
     public Card(int magicPoint, int strengthPoint, int intelligencePoint) {
+        this(magicPoint, strengthPoint, intelligencePoint, indexOf(magicPoint, strengthPoint, intelligencePoint));
+    }
+
+    private Card(int magicPoint, int strengthPoint, int intelligencePoint, int index) {
         this.magicPoint = magicPoint;
         this.strengthPoint = strengthPoint;
         this.intelligencePoint = intelligencePoint;
+        this.index = index;
+    }
+
+    /** Returns the shared instance of the legal card with the given index (0 to COUNT - 1). */
+    public static Card of(int index) {
+        return CARDS[index];
+    }
+
+    /** Returns the index of the legal card with the given points, or -1 if there is no such card. */
+    public static int indexOf(int magicPoint, int strengthPoint, int intelligencePoint) {
+        if (magicPoint < 1 || magicPoint > MAXIMUM_MAGIC || strengthPoint < 1 || intelligencePoint < 1
+                || magicPoint + strengthPoint + intelligencePoint != POINTS) {
+            return -1;
+        }
+        return MAGIC_OFFSETS[magicPoint] + strengthPoint - 1;
     }
 
     @Override
@@ -17,6 +59,21 @@ public class Card {
         return "Card: " + this.magicPoint + " magic points, " + this.strengthPoint + " strength points, " + this.intelligencePoint + " intelligence points.";
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Card)) return false;
+        Card card = (Card) o;
+        return magicPoint == card.magicPoint
+                && strengthPoint == card.strengthPoint
+                && intelligencePoint == card.intelligencePoint;
+    }
+
+    @Override
+    public int hashCode() {
+        return (magicPoint * 31 + strengthPoint) * 31 + intelligencePoint;
+    }
+
     public int getMagicPoint() {
         return magicPoint;
     }
@@ -29,4 +86,9 @@ public class Card {
         return intelligencePoint;
     }
 
+    /** Index of this card in the card table, or -1 for cards that are not legal (e.g. the totals of a hand). */
+    public int getIndex() {
+        return index;
+    }
+
 }
@@ -1,41 +1,111 @@
 package tech.bts.cardgame.model;
 
+import tech.bts.cardgame.exception.EmptyDeckException;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
+/**
+ * Cards are stored as indexes of the card table (see {@link Card#of(int)}).
+ * The top of the deck is the end of the array, so picking a card only moves the cursor.
+ */
 public class Deck {
 
-    private List<Card> deck;
+    private static final byte[] TEMPLATE = new byte[Card.COUNT];
+
+    static {
+        for (int i = 0; i < Card.COUNT; i++) {
+            TEMPLATE[i] = (byte) i;
+        }
+    }
+
+    private static final SplittableRandom SEED_ROOT = new SplittableRandom();
+    private static final ThreadLocal<SplittableRandom> SEED_RANDOM = ThreadLocal.withInitial(Deck::splitSeedRandom);
+
+    private byte[] cards;
+    private int size;
+    private long seed;
+    private boolean seeded;
 
     public Deck() {
-        this.deck = new ArrayList<>();
+        this.cards = new byte[Card.COUNT];
+        this.size = 0;
     }
 
-    public void add (Card card){ deck.add(card); }
+    /** Restores a saved deck: the first size card indexes of the array, the top one last. */
+    public Deck(byte[] cards, int size) {
+        this.cards = cards;
+        this.size = size;
+    }
+
+    public Deck copy() {
+        Deck copy = new Deck(Arrays.copyOf(cards, cards.length), size);
+        copy.seed = seed;
+        copy.seeded = seeded;
+        return copy;
+    }
+
+    public void add (Card card){
+        int index = card.getIndex();
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a legal card: " + card);
+        }
+        if (size == cards.length) {
+            cards = Arrays.copyOf(cards, Math.max(cards.length * 2, Card.COUNT));
+        }
+        cards[size++] = (byte) index;
+    }
 
     public void generate() {
-        for (int magicPoint = 1; magicPoint <= 8; magicPoint++) {
-            //nested loop
-            for (int strengthPoint = 1; strengthPoint <= (9 - magicPoint); strengthPoint++) {
-                int intelligencePoint = 10 - magicPoint - strengthPoint;
-                this.add(new Card(magicPoint, strengthPoint, intelligencePoint));
-            }
+        if (size + TEMPLATE.length > cards.length) {
+            cards = Arrays.copyOf(cards, size + TEMPLATE.length);
+        }
+        System.arraycopy(TEMPLATE, 0, cards, size, TEMPLATE.length);
+        size += TEMPLATE.length;
+    }
+
+    /** Returns a generated deck shuffled with the given seed: the same seed always gives the same order. */
+    public static Deck shuffled(long seed) {
+        Deck deck = new Deck();
+        deck.generate();
+        deck.shuffle(seed);
+        return deck;
+    }
+
+    public static long nextSeed() {
+        return SEED_RANDOM.get().nextLong();
+    }
+
+    private static SplittableRandom splitSeedRandom() {
+        synchronized (SEED_ROOT) {
+            return SEED_ROOT.split();
         }
     }
 
     public void shuffle() {
-        Random random = new Random();
-        for (int i = 0; i < this.deck.size() - 1; i++) {
-            Card card1 = this.deck.get(i);
-            Card card2 = this.deck.get(random.nextInt(deck.size()));
-            this.deck.set(random.nextInt(deck.size()), card1);
-            this.deck.set(i, card2);
+        shuffle(nextSeed());
+    }
+
+    /** Fisher-Yates shuffle. */
+    public void shuffle(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
         }
+        this.seed = seed;
+        this.seeded = true;
     }
 
     public Card pickCard() {
-        return this.deck.remove(deck.size() - 1);
+        if (size == 0) {
+            throw new EmptyDeckException();
+        }
+        return Card.of(cards[--size]);
     }
     /** public Hand deal(int dealSize) {
         List<Card> cards = new ArrayList<>();
@@ -46,10 +116,24 @@ public class Deck {
     } */
 
     public List<Card> getDeck() {
+        List<Card> deck = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            deck.add(Card.of(cards[i]));
+        }
         return deck;
     }
 
     public int deckSize() {
-        return this.deck.size();
+        return this.size;
+    }
+
+    /** Card indexes of the deck, the top one last. */
+    public byte[] getCardIndexes() {
+        return Arrays.copyOf(cards, size);
+    }
+
+    /** Seed of the last shuffle, or null if the deck was never shuffled. */
+    public Long getSeed() {
+        return seeded ? seed : null;
     }
 }
@@ -1,11 +1,10 @@
 package tech.bts.cardgame.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import tech.bts.cardgame.exception.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Game {
 
@@ -13,106 +12,153 @@ public class Game {
 
     private long id;
     private final Deck deck;
+    private final Long seed;
+    private final long created;
     private State state;
-    private Map<String, Player> players;
+    private final Player[] players;
+    private int playerCount;
+    private int handsFilled;
+    private int round;
+    private long version;
+    private ChangeListener changeListener;
 
     public final static int HAND_SIZE = 3;
     public final static int MAXIMUM_DISCARD = 2;
     public final static int MAXIMUM_PLAYER_NUM = 2;
     public final static int MINIMUM_DECK_SIZE = 10;
+    // Longest player name the repositories store (game_players.name)
+    public final static int MAXIMUM_NAME_LENGTH = 50;
+
+    /** Told about every change of a game, with its event (see GameEvent), e.g. by the repositories to save only what changed. */
+    public interface ChangeListener {
+        void changed(Game game, GameEvent.Type type, int value);
+    }
 
     public Game(Deck deck) {
         this.deck = deck;
+        this.seed = deck.getSeed();
+        this.created = System.currentTimeMillis();
         this.state = State.OPEN;
-        this.players = new HashMap<>();
+        this.players = new Player[MAXIMUM_PLAYER_NUM];
+    }
+
+    /** Restores a saved game; the players are given in the order they joined. */
+    public Game(long id, Deck deck, Long seed, long created, State state, int round, List<Player> players) {
+        this.id = id;
+        this.deck = deck;
+        this.seed = seed;
+        this.created = created;
+        this.state = state;
+        this.round = round;
+        this.players = new Player[MAXIMUM_PLAYER_NUM];
+        for (Player player : players) {
+            player.slot = playerCount;
+            this.players[playerCount++] = player;
+            if (player.getHand().handSize() == HAND_SIZE) {
+                handsFilled++;
+            }
+        }
     }
 
     public Player join(String username) {
         if (!state.equals(State.OPEN)) {
             throw new JoiningNotAllowedException();
         }
-        players.put(username, new Player(username));
-        if (players.size() == MAXIMUM_PLAYER_NUM) {
+        if (username.length() > MAXIMUM_NAME_LENGTH) {
+            throw new UsernameTooLongException();
+        }
+        Player player = getPlayer(username);
+        if (player != null) {
+            return player;
+        }
+        return addPlayer(username);
+    }
+
+    private Player addPlayer(String username) {
+        Player player = new Player(username);
+        player.slot = playerCount;
+        players[playerCount++] = player;
+        if (playerCount == MAXIMUM_PLAYER_NUM) {
             this.state = State.PLAYING;
         }
-        return new Player(username);
+        changed(GameEvent.Type.JOIN, player.slot);
+        return player;
     }
 
     public Card pickCard(String username) {
-        if (!this.getPlayerNames().contains(username)) {
+        Player player = getPlayer(username);
+        if (player == null) {
             throw new PlayerNotInTheGameException();
         }
         if (!state.equals(State.PLAYING)) {
             throw new NotPlayingException();
         }
-        Player player = players.get(username);
         if(player.getHand().handSize() >= HAND_SIZE) {
             throw new HandSizeLimitExceededException();
         }
         if (player.getPickedCard() != null) {
             throw new CannotPick2CardsInARowException();
         }
+        return pick(player);
+    }
+
+    private Card pick(Player player) {
         Card pickedCard = deck.pickCard();
         player.setPickedCard(pickedCard);
+        changed(GameEvent.Type.PICK, player.slot);
         return pickedCard;
     }
 
     public void discard(String username) {
-        Player player = players.get(username);
+        Player player = getJoinedPlayer(username);
         if (player.getPickedCard() == null) {
             throw new CannotActWithoutPreviouslyPickingException();
         }
         if (player.getDiscardCounter() >= MAXIMUM_DISCARD) {
             throw new MaximumDiscardLimitExceededException();
         }
-        player.setPickedCard(null);
-        player.setDiscardCounter(player.getDiscardCounter() + 1);
+        discardPicked(player);
         if (player.getDiscardCounter() == MAXIMUM_DISCARD) {
             autoFill(username);
         }
-        int handsFilled = 0;
-        for (String name : getPlayerNames()) {
-            player = players.get(name);
-            if (player.getHand().handSize() == HAND_SIZE) {
-                handsFilled++;
-            }
-        }
-        if (handsFilled == 2) {
-            battle();
-        }
+    }
+
+    private void discardPicked(Player player) {
+        player.setPickedCard(null);
+        player.setDiscardCounter(player.getDiscardCounter() + 1);
+        changed(GameEvent.Type.DISCARD, player.slot);
     }
 
     public void keep(String username) {
-        Player player = players.get(username);
-        if (player.getPickedCard() != null) {
-            Hand hand = player.getHand();
-            if (hand.handSize() < HAND_SIZE) {
-                hand.keep(player.getPickedCard());
-                player.setHand(hand);
-                player.setPickedCard(null);
-            } else {
-                throw new HandSizeLimitExceededException();
-            }
-        } else {
+        Player player = getJoinedPlayer(username);
+        if (player.getPickedCard() == null) {
             throw new CannotActWithoutPreviouslyPickingException();
         }
-        int handsFilled = 0;
-        for (String name : getPlayerNames()) {
-            player = players.get(name);
-            if (player.getHand().handSize() == HAND_SIZE) {
-                handsFilled++;
-            }
+        if (player.getHand().handSize() >= HAND_SIZE) {
+            throw new HandSizeLimitExceededException();
         }
-        if (handsFilled == 2) {
+        keepPicked(player);
+        if (player.getHand().handSize() == HAND_SIZE && handsFilled == MAXIMUM_PLAYER_NUM) {
             battle();
         }
     }
 
+    private void keepPicked(Player player) {
+        Hand hand = player.getHand();
+        hand.keep(player.getPickedCard());
+        player.setPickedCard(null);
+        if (hand.handSize() == HAND_SIZE) {
+            handsFilled++;
+        }
+        changed(GameEvent.Type.KEEP, player.slot);
+    }
+
     public void autoFill(String username) {
-        Player player = players.get(username);
+        Player player = getJoinedPlayer(username);
         if (player.getDiscardCounter() == MAXIMUM_DISCARD) {
-            Hand hand = player.getHand();
-            while (hand.handSize() < HAND_SIZE) {
+            // Counted up front: the last keep may start a battle, which empties the hand
+            int missingCards = HAND_SIZE - player.getHand().handSize();
+            for (int i = 0; i < missingCards; i++) {
                 pickCard(username);
                 keep(username);
             }
@@ -120,44 +166,58 @@ public class Game {
     }
 
     public void battle() {
-        Map<String, Card> allAccumulateCards = new HashMap<>();
-        for (String username : getPlayerNames()) {
-            allAccumulateCards.put(username, players.get(username).getHand().calculate());
-            players.get(username).setPickedCard(null);
-            players.get(username).setHand(new Hand());
-            players.get(username).setDiscardCounter(0);
-        }
-        Card accumulateCard1 = allAccumulateCards.get(getPlayerNames().get(0));
-        Card accumulateCard2 = allAccumulateCards.get(getPlayerNames().get(1));
-        int points1 = 0;
-        int points2 = 0;
-        if (accumulateCard1.getMagicPoint() > accumulateCard2.getMagicPoint()) {
-            points1++;
-        } else if (accumulateCard1.getMagicPoint() < accumulateCard2.getMagicPoint()) {
-            points2++;
-        }
-        if (accumulateCard1.getStrengthPoint() > accumulateCard2.getStrengthPoint()) {
-            points1++;
-        } else if (accumulateCard1.getStrengthPoint() < accumulateCard2.getStrengthPoint()) {
-            points2++;
-        }
-        if (accumulateCard1.getIntelligencePoint() > accumulateCard2.getIntelligencePoint()) {
-            points1++;
-        } else if (accumulateCard1.getIntelligencePoint() < accumulateCard2.getIntelligencePoint()) {
-            points2++;
-        }
-        int result = points1 - points2;
+        int result = HandTable.battle(players[0].getHand(), players[1].getHand());
+        int winner = -1;
         if (result > 0) {
-            players.get(getPlayerNames().get(0)).setPoint(1);
+            winner = 0;
         } else if (result < 0) {
-            players.get(getPlayerNames().get(1)).setPoint(1);
-        } else {
-            players.get(getPlayerNames().get(0)).setPoint(0);
-            players.get(getPlayerNames().get(1)).setPoint(0);
+            winner = 1;
+        }
+        if (winner >= 0) {
+            players[winner].setPoint(1);
         }
+        for (int i = 0; i < playerCount; i++) {
+            Player player = players[i];
+            player.setPickedCard(null);
+            player.getHand().clear();
+            player.setDiscardCounter(0);
+        }
+        handsFilled = 0;
+        round++;
         if (deck.deckSize() < MINIMUM_DECK_SIZE) {
             this.state = State.FINISHED;
         }
+        changed(GameEvent.Type.BATTLE, winner);
+    }
+
+    /**
+     * Applies an event of the log of this game, e.g. to rebuild the game from a snapshot; the rules are not checked
+     * again, and what the action caused then is applied by the events that follow.
+     */
+    public void apply(GameEvent event) {
+        if (event.getVersion() != version + 1) {
+            throw new IllegalArgumentException("event " + event + " doesn't follow version " + version);
+        }
+        switch (event.getType()) {
+            case JOIN:
+                addPlayer(event.getPlayer());
+                break;
+            case PICK:
+                pick(players[event.getSlot()]);
+                break;
+            case KEEP:
+                keepPicked(players[event.getSlot()]);
+                break;
+            case DISCARD:
+                discardPicked(players[event.getSlot()]);
+                break;
+            case BATTLE:
+                battle();
+                break;
+            case STATE:
+                setState(event.getState());
+                break;
+        }
     }
 
     public long getId() {
@@ -168,20 +228,115 @@ public class Game {
         this.id = id;
     }
 
+    /**
+     * Seed the deck was shuffled with, or null if it was not shuffled.
+     * For a generated deck, {@code new Game(Deck.shuffled(seed))} replays the match with the same cards.
+     */
+    @JsonIgnore
+    public Long getSeed() {
+        return seed;
+    }
+
+    /** When the game was created, in milliseconds since the epoch. */
+    public long getCreated() {
+        return created;
+    }
+
     public State getState() {
         return state;
     }
 
     public void setState(State state) {
         this.state = state;
+        changed(GameEvent.Type.STATE, state.ordinal());
+    }
+
+    /** Number of battles played so far. */
+    public int getRound() {
+        return round;
+    }
+
+    public int getDeckSize() {
+        return deck.deckSize();
+    }
+
+    @JsonIgnore
+    public Deck getDeck() {
+        return deck;
+    }
+
+    /** Every change of the game is one version and one event. */
+    private void changed(GameEvent.Type event, int value) {
+        version++;
+        if (changeListener != null) {
+            changeListener.changed(this, event, value);
+        }
+    }
+
+    /** Grows on every change of the game, and is saved with it; e.g. for the ETag of the game. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Called by repositories when restoring a game. */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    public ChangeListener getChangeListener() {
+        return changeListener;
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /** Copy of the state of the game, e.g. to read it on another thread while the game goes on; without the listener. */
+    public Game copy() {
+        List<Player> copies = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            Player player = players[i];
+            copies.add(new Player(player.getName(), player.getDiscardCounter(), player.getPickedCard(), player.getHand().copy(), player.getPoint()));
+        }
+        Game copy = new Game(id, deck.copy(), seed, created, state, round, copies);
+        copy.version = version;
+        return copy;
+    }
+
+    @JsonIgnore
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /** Player in the given slot (0 for the first one that joined). */
+    public Player getPlayer(int slot) {
+        return players[slot];
     }
 
     public Player getPlayer(String username) {
-        return players.get(username);
+        for (int i = 0; i < playerCount; i++) {
+            if (players[i].getName().equals(username)) {
+                return players[i];
+            }
+        }
+        return null;
+    }
+
+    private Player getJoinedPlayer(String username) {
+        Player player = getPlayer(username);
+        if (player == null) {
+            throw new PlayerNotInTheGameException();
+        }
+        return player;
     }
 
     public List<String> getPlayerNames() {
-        return new ArrayList<>(players.keySet());
+        List<String> names = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            names.add(players[i].getName());
+        }
+        return names;
     }
 
-}
\ No newline at end of file
+}
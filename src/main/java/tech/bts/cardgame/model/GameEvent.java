@@ -0,0 +1,91 @@
+package tech.bts.cardgame.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Objects;
+
+/**
+ * One change of a game, as recorded in its event log: the game at version N is the game at version N - 1 with the
+ * event of version N applied (see {@link Game#apply(GameEvent)}).
+ * <p>
+ * Events are facts: they are applied without checking the rules again, and what an action causes is an event of its
+ * own, e.g. the keep that fills the last hand is followed by a BATTLE, a second discard by the picks and keeps that
+ * fill the hand.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GameEvent {
+
+    public enum Type {JOIN, PICK, KEEP, DISCARD, BATTLE, STATE}
+
+    private static final int NO_SLOT = 0xF;
+
+    private final long version;
+    private final Type type;
+    private final int value;
+    private final String player;
+
+    private GameEvent(long version, Type type, int value, String player) {
+        this.version = version;
+        this.type = type;
+        this.value = value;
+        this.player = player;
+    }
+
+    /** The event of the given version from its code (see getCode); player is the name of the player who joined, for JOIN. */
+    public static GameEvent of(long version, byte code, String player) {
+        int value = code & 0xF;
+        return new GameEvent(version, Type.values()[(code & 0xFF) >> 4], value == NO_SLOT ? -1 : value, player);
+    }
+
+    /** The type and the slot (or state) of an event in one byte, e.g. to record the events of a game without allocating. */
+    public static byte code(Type type, int value) {
+        return (byte) (type.ordinal() << 4 | (value < 0 ? NO_SLOT : value));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Slot of the player who acted; for BATTLE the slot of the winner, -1 for a draw; null for STATE. */
+    public Integer getSlot() {
+        return type != Type.STATE ? value : null;
+    }
+
+    /** The new state, for STATE. */
+    public Game.State getState() {
+        return type == Type.STATE ? Game.State.values()[value] : null;
+    }
+
+    /** Name of the player who joined, for JOIN. */
+    public String getPlayer() {
+        return player;
+    }
+
+    @JsonIgnore
+    public byte getCode() {
+        return code(type, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GameEvent that = (GameEvent) o;
+        return version == that.version && type == that.type && value == that.value && Objects.equals(player, that.player);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(version, type, value, player);
+    }
+
+    @Override
+    public String toString() {
+        return version + ":" + type + "(" + (player != null ? player : String.valueOf(value)) + ")";
+    }
+}
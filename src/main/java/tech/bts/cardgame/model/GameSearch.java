@@ -1,4 +1,88 @@
 package tech.bts.cardgame.model;
 
+/**
+ * Games to look for, ordered by id (oldest first, or newest first). A page of games starts after the id of the
+ * last game of the previous one (afterId), so it is found with the indexes however far it is.
+ */
 public class GameSearch {
+
+    private Game.State state;
+    private String player;
+    private long createdAfter;
+    private boolean newestFirst;
+    private long afterId;
+    private int limit;
+
+    /** Only games in this state, or in any state if null. */
+    public Game.State getState() {
+        return state;
+    }
+
+    public GameSearch setState(Game.State state) {
+        this.state = state;
+        return this;
+    }
+
+    /** Only games this player joined, or of any players if null. */
+    public String getPlayer() {
+        return player;
+    }
+
+    public GameSearch setPlayer(String player) {
+        this.player = player;
+        return this;
+    }
+
+    /** Only games created after this time, in milliseconds since the epoch (0 for all of them). */
+    public long getCreatedAfter() {
+        return createdAfter;
+    }
+
+    public GameSearch setCreatedAfter(long createdAfter) {
+        this.createdAfter = createdAfter;
+        return this;
+    }
+
+    /** Whether the games are ordered from the greatest id, i.e. the newest game first. */
+    public boolean isNewestFirst() {
+        return newestFirst;
+    }
+
+    public GameSearch setNewestFirst(boolean newestFirst) {
+        this.newestFirst = newestFirst;
+        return this;
+    }
+
+    /** Only games after this id in the order of the search (0 to start from the first one). */
+    public long getAfterId() {
+        return afterId;
+    }
+
+    public GameSearch setAfterId(long afterId) {
+        this.afterId = afterId;
+        return this;
+    }
+
+    /** Maximum number of games, or 0 for no limit. */
+    public int getLimit() {
+        return limit;
+    }
+
+    public GameSearch setLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /** True if the game matches the criteria, other than the id and the limit. */
+    public boolean matches(Game game) {
+        return (state == null || game.getState() == state)
+                && (player == null || game.getPlayer(player) != null)
+                && game.getCreated() > createdAfter;
+    }
+
+    public boolean matches(GameSummary summary) {
+        return (state == null || summary.getState() == state)
+                && (player == null || summary.getPlayerNames().contains(player))
+                && summary.getCreated() > createdAfter;
+    }
 }
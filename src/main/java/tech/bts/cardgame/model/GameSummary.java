@@ -0,0 +1,61 @@
+package tech.bts.cardgame.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the lists of games show: the id, state, players and creation time of a game, without its deck and hands.
+ * Summaries are immutable, so they can be shared and cached.
+ */
+public final class GameSummary {
+
+    private final long id;
+    private final Game.State state;
+    private final List<String> playerNames;
+    private final long created;
+
+    public GameSummary(long id, Game.State state, List<String> playerNames, long created) {
+        this.id = id;
+        this.state = state;
+        this.playerNames = Collections.unmodifiableList(playerNames);
+        this.created = created;
+    }
+
+    public static GameSummary of(Game game) {
+        return new GameSummary(game.getId(), game.getState(), game.getPlayerNames(), game.getCreated());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Game.State getState() {
+        return state;
+    }
+
+    public List<String> getPlayerNames() {
+        return playerNames;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GameSummary)) return false;
+        GameSummary summary = (GameSummary) o;
+        return id == summary.id && created == summary.created && state == summary.state && playerNames.equals(summary.playerNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Long.hashCode(id) * 31 + state.hashCode()) * 31 + playerNames.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Game " + id + " is " + state + " with " + playerNames;
+    }
+}
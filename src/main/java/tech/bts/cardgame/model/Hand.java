@@ -1,55 +1,106 @@
 package tech.bts.cardgame.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Cards are stored as indexes of the card table (see {@link Card#of(int)}).
+ */
 public class Hand {
 
-    private List<Card> hand;
+    private byte[] cards;
+    private int size;
+    private int magicPoint;
+    private int strengthPoint;
+    private int intelligencePoint;
 
     public Hand(List<Card> cards) {
-        this.hand = cards;
+        this.cards = new byte[Math.max(cards.size(), Game.HAND_SIZE)];
+        for (Card card : cards) {
+            keep(card);
+        }
     }
 
     public Hand(){
-        this.hand = new ArrayList<>();
+        this.cards = new byte[Game.HAND_SIZE];
+        this.size = 0;
     }
 
     public Hand keep (Card card){
-        hand.add(card);
+        int index = card.getIndex();
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a legal card: " + card);
+        }
+        if (size == cards.length) {
+            cards = Arrays.copyOf(cards, cards.length * 2);
+        }
+        cards[size++] = (byte) index;
+        magicPoint += card.getMagicPoint();
+        strengthPoint += card.getStrengthPoint();
+        intelligencePoint += card.getIntelligencePoint();
         return this;
     }
 
+    public void clear() {
+        size = 0;
+        magicPoint = 0;
+        strengthPoint = 0;
+        intelligencePoint = 0;
+    }
+
     public Card calculate() {
-        int magic = 0;
-        int strength = 0;
-        int intelligence = 0;
-        for (Card card : hand) {
-            magic += card.getMagicPoint();
-            strength += card.getStrengthPoint();
-            intelligence += card.getIntelligencePoint();
-        }
-        return new Card(magic, strength, intelligence);
+        return new Card(magicPoint, strengthPoint, intelligencePoint);
     }
 
     @Override
     public String toString(){
         String result = "";
-        result += "This hand includes " + this.hand.size() + " cards: ";
-        for (int i = 0; i < hand.size(); i++) {
+        result += "This hand includes " + this.size + " cards: ";
+        for (int i = 0; i < size; i++) {
             result += "\n";
-            result += hand.get(i).toString();
+            result += Card.of(cards[i]).toString();
             result += " ";
         }
         return result;
     }
 
     public List<Card> getHand() {
+        List<Card> hand = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hand.add(Card.of(cards[i]));
+        }
         return hand;
     }
 
     public int handSize() {
-        return this.hand.size();
+        return this.size;
+    }
+
+    Hand copy() {
+        Hand copy = new Hand();
+        copy.cards = Arrays.copyOf(cards, cards.length);
+        copy.size = size;
+        copy.magicPoint = magicPoint;
+        copy.strengthPoint = strengthPoint;
+        copy.intelligencePoint = intelligencePoint;
+        return copy;
+    }
+
+    public int cardIndex(int position) {
+        return cards[position];
+    }
+
+    public int getMagicPoint() {
+        return magicPoint;
+    }
+
+    public int getStrengthPoint() {
+        return strengthPoint;
+    }
+
+    public int getIntelligencePoint() {
+        return intelligencePoint;
     }
 
 }
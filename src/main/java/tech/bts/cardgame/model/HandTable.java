@@ -0,0 +1,181 @@
+package tech.bts.cardgame.model;
+
+/**
+ * Precomputed values of every hand of {@link Game#HAND_SIZE} different legal cards (C(36, 3) = 7140 hands).
+ * A hand is identified by a key computed from its sorted card indexes (combinatorial number system),
+ * so the table doesn't depend on the order the cards were kept in.
+ * <p>
+ * For each hand the table stores its totals packed in a short and its strength: the share of the
+ * possible opponent hands (hands without any of its cards) it beats in a battle, draws counting half,
+ * scaled to 0-255. Both tables take about 21 KB.
+ */
+public class HandTable {
+
+    public final static int HANDS = Card.COUNT * (Card.COUNT - 1) * (Card.COUNT - 2) / 6;
+    public final static int MAXIMUM_STRENGTH = 255;
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final short[] TOTALS = new short[HANDS];
+    private static final byte[] STRENGTH = new byte[HANDS];
+    private static final int[] CARD_STRENGTH = new int[Card.COUNT];
+
+    static {
+        long[] cardMasks = new long[HANDS];
+        for (int c = 2; c < Card.COUNT; c++) {
+            for (int b = 1; b < c; b++) {
+                for (int a = 0; a < b; a++) {
+                    Card card1 = Card.of(a);
+                    Card card2 = Card.of(b);
+                    Card card3 = Card.of(c);
+                    int key = key(a, b, c);
+                    TOTALS[key] = (short) pack(
+                            card1.getMagicPoint() + card2.getMagicPoint() + card3.getMagicPoint(),
+                            card1.getStrengthPoint() + card2.getStrengthPoint() + card3.getStrengthPoint(),
+                            card1.getIntelligencePoint() + card2.getIntelligencePoint() + card3.getIntelligencePoint());
+                    cardMasks[key] = (1L << a) | (1L << b) | (1L << c);
+                }
+            }
+        }
+
+        // Twice the number of wins plus the draws, and the number of opponent hands
+        int[] score = new int[HANDS];
+        int[] opponents = new int[HANDS];
+        for (int key1 = 0; key1 < HANDS; key1++) {
+            for (int key2 = key1 + 1; key2 < HANDS; key2++) {
+                if ((cardMasks[key1] & cardMasks[key2]) != 0) {
+                    continue;
+                }
+                int result = battle(key1, key2);
+                score[key1] += 1 + result;
+                score[key2] += 1 - result;
+                opponents[key1]++;
+                opponents[key2]++;
+            }
+        }
+        for (int key = 0; key < HANDS; key++) {
+            STRENGTH[key] = (byte) ((long) score[key] * MAXIMUM_STRENGTH / (2L * opponents[key]));
+        }
+
+        int[] handsWithCard = new int[Card.COUNT];
+        for (int key = 0; key < HANDS; key++) {
+            long cards = cardMasks[key];
+            while (cards != 0) {
+                int card = Long.numberOfTrailingZeros(cards);
+                CARD_STRENGTH[card] += getStrength(key);
+                handsWithCard[card]++;
+                cards &= cards - 1;
+            }
+        }
+        for (int card = 0; card < Card.COUNT; card++) {
+            CARD_STRENGTH[card] /= handsWithCard[card];
+        }
+    }
+
+    /** Key of the hand with the given different card indexes, in any order. */
+    public static int key(int card1, int card2, int card3) {
+        int a = Math.min(card1, Math.min(card2, card3));
+        int c = Math.max(card1, Math.max(card2, card3));
+        int b = card1 + card2 + card3 - a - c;
+        return a + b * (b - 1) / 2 + c * (c - 1) * (c - 2) / 6;
+    }
+
+    /** Key of the hand, or -1 if it doesn't have exactly 3 different cards. */
+    public static int key(Hand hand) {
+        if (hand.handSize() != 3) {
+            return -1;
+        }
+        int a = hand.cardIndex(0);
+        int b = hand.cardIndex(1);
+        int c = hand.cardIndex(2);
+        if (a == b || b == c || a == c) {
+            return -1;
+        }
+        return key(a, b, c);
+    }
+
+    /**
+     * Compares two hands skill by skill: returns 1 if the first one wins more skills,
+     * -1 if the second one does and 0 if there is no winner.
+     */
+    public static int battle(int key1, int key2) {
+        int totals1 = TOTALS[key1];
+        int totals2 = TOTALS[key2];
+        int points = Integer.compare(totals1 & (MASK << 2 * BITS), totals2 & (MASK << 2 * BITS))
+                + Integer.compare(totals1 & (MASK << BITS), totals2 & (MASK << BITS))
+                + Integer.compare(totals1 & MASK, totals2 & MASK);
+        return Integer.signum(points);
+    }
+
+    /** Like {@link #battle(int, int)}, comparing the totals of the hands when they are not in the table. */
+    public static int battle(Hand hand1, Hand hand2) {
+        int key1 = key(hand1);
+        int key2 = key(hand2);
+        if (key1 >= 0 && key2 >= 0) {
+            return battle(key1, key2);
+        }
+        int points = Integer.compare(hand1.getMagicPoint(), hand2.getMagicPoint())
+                + Integer.compare(hand1.getStrengthPoint(), hand2.getStrengthPoint())
+                + Integer.compare(hand1.getIntelligencePoint(), hand2.getIntelligencePoint());
+        return Integer.signum(points);
+    }
+
+    public static int getMagicPoint(int key) {
+        return (TOTALS[key] >> 2 * BITS) & MASK;
+    }
+
+    public static int getStrengthPoint(int key) {
+        return (TOTALS[key] >> BITS) & MASK;
+    }
+
+    public static int getIntelligencePoint(int key) {
+        return TOTALS[key] & MASK;
+    }
+
+    /** Share of the opponent hands this hand beats, from 0 to {@link #MAXIMUM_STRENGTH}. */
+    public static int getStrength(int key) {
+        return STRENGTH[key] & 0xFF;
+    }
+
+    /**
+     * Expected strength of the hand once the card is added to it: the strength of the hand
+     * if it becomes complete, or the average strength of the hands it can still become.
+     */
+    public static int getExpectedStrength(Hand hand, Card card) {
+        int index = card.getIndex();
+        switch (hand.handSize()) {
+            case 0:
+                return CARD_STRENGTH[index];
+            case 1: {
+                int first = hand.cardIndex(0);
+                if (first == index) {
+                    return CARD_STRENGTH[index];
+                }
+                int total = 0;
+                int hands = 0;
+                for (int third = 0; third < Card.COUNT; third++) {
+                    if (third != first && third != index) {
+                        total += getStrength(key(first, index, third));
+                        hands++;
+                    }
+                }
+                return total / hands;
+            }
+            case 2: {
+                int first = hand.cardIndex(0);
+                int second = hand.cardIndex(1);
+                if (first == second || first == index || second == index) {
+                    return CARD_STRENGTH[index];
+                }
+                return getStrength(key(first, second, index));
+            }
+            default:
+                return CARD_STRENGTH[index];
+        }
+    }
+
+    private static int pack(int magicPoint, int strengthPoint, int intelligencePoint) {
+        return (magicPoint << 2 * BITS) | (strengthPoint << BITS) | intelligencePoint;
+    }
+}
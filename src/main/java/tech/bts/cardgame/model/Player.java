@@ -3,6 +3,7 @@ package tech.bts.cardgame.model;
 public class Player {
 
     private String name;
+    int slot;
     private int discardCounter;
     private Card pickedCard;
     private Hand hand;
@@ -16,6 +17,19 @@ public class Player {
         this.point = 0;
     }
 
+    /** Restores a saved player. */
+    public Player(String name, int discardCounter, Card pickedCard, Hand hand, int point) {
+        this.name = name;
+        this.discardCounter = discardCounter;
+        this.pickedCard = pickedCard;
+        this.hand = hand;
+        this.point = point;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
     public String getName() {
         return name;
     }
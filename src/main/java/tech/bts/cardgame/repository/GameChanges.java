@@ -0,0 +1,214 @@
+package tech.bts.cardgame.repository;
+
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.Hand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What changed in a game since it was last saved, so the repositories write only those parts and log the events.
+ * The game tells it every change (see Game.ChangeListener); the model itself keeps no trace of what was saved.
+ * <p>
+ * A game read from a repository is tracked as saved at its version (see saved). One that isn't tracked yet, e.g. a new
+ * game, is all changed from its version on: saving it writes it whole.
+ */
+public class GameChanges implements Game.ChangeListener {
+
+    // Parts of the game changed since the last save (see getParts)
+    public static final int STATE_CHANGED = 1;
+    public static final int DECK_CHANGED = 1 << 1;
+    // The cards of the deck must be written, not only its size
+    public static final int DECK_REPLACED = 1 << 2;
+    private static final int PLAYER_CHANGED = 1 << 3;
+
+    private static final int ALL_CHANGED = STATE_CHANGED | DECK_CHANGED | DECK_REPLACED;
+    private static final byte[] NO_EVENTS = new byte[0];
+    private static final int NOT_KEPT = -1;
+
+    private int parts;
+    private long savedVersion;
+    // Codes of the events since the saved version, one per version (see getEvents)
+    private byte[] events = NO_EVENTS;
+    private int eventCount;
+    // Per slot: position of the first card kept since the save, and whether the saved cards were cleared since
+    private final int[] unsavedFrom = new int[Game.MAXIMUM_PLAYER_NUM];
+    private int clearedHands;
+
+    private GameChanges(long savedVersion) {
+        this.savedVersion = savedVersion;
+        Arrays.fill(unsavedFrom, NOT_KEPT);
+    }
+
+    /** The changes of the game since it was saved; a game not tracked yet is tracked from now on, all changed. */
+    public static GameChanges of(Game game) {
+        if (game.getChangeListener() instanceof GameChanges) {
+            return (GameChanges) game.getChangeListener();
+        }
+        GameChanges changes = new GameChanges(game.getVersion());
+        // A new game has no saved hands to delete
+        changes.markAllChanged(game, game.getId() != 0);
+        game.setChangeListener(changes);
+        return changes;
+    }
+
+    /** Tracks the changes of a game read from a repository, as saved at its version. */
+    public static GameChanges saved(Game game) {
+        GameChanges changes = new GameChanges(game.getVersion());
+        game.setChangeListener(changes);
+        return changes;
+    }
+
+    /** Copy of the game with a copy of its changes, e.g. to save it on another thread while the game goes on. */
+    public static Game copy(Game game) {
+        Game copy = game.copy();
+        copy.setChangeListener(of(game).copy());
+        return copy;
+    }
+
+    @Override
+    public void changed(Game game, GameEvent.Type type, int value) {
+        // The value is the slot of the player who acted, except for BATTLE and STATE
+        switch (type) {
+            case JOIN:
+                parts |= STATE_CHANGED | PLAYER_CHANGED << value;
+                break;
+            case PICK:
+                parts |= DECK_CHANGED | PLAYER_CHANGED << value;
+                break;
+            case KEEP:
+                parts |= PLAYER_CHANGED << value;
+                if (unsavedFrom[value] == NOT_KEPT) {
+                    unsavedFrom[value] = game.getPlayer(value).getHand().handSize() - 1;
+                }
+                break;
+            case DISCARD:
+                parts |= PLAYER_CHANGED << value;
+                break;
+            case BATTLE:
+                parts |= STATE_CHANGED;
+                for (int i = 0; i < game.getPlayerCount(); i++) {
+                    parts |= PLAYER_CHANGED << i;
+                    unsavedFrom[i] = 0;
+                    clearedHands |= 1 << i;
+                }
+                break;
+            case STATE:
+                parts |= STATE_CHANGED;
+                break;
+        }
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, Math.max(eventCount * 2, 8));
+        }
+        events[eventCount++] = GameEvent.code(type, value);
+    }
+
+    /** Bits of the parts changed since the last save: STATE_CHANGED, DECK_CHANGED, DECK_REPLACED and the players (see isPlayerChanged). */
+    public int getParts() {
+        return parts;
+    }
+
+    public static boolean isPlayerChanged(int parts, int slot) {
+        return (parts & PLAYER_CHANGED << slot) != 0;
+    }
+
+    /** Version of the game when it was last saved, i.e. the version the changes start from. */
+    public long getSavedVersion() {
+        return savedVersion;
+    }
+
+    /** The events of the changes, i.e. of the versions after the saved version, for the event log. */
+    public List<GameEvent> getEvents(Game game) {
+        List<GameEvent> unsaved = new ArrayList<>(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            byte code = events[i];
+            GameEvent event = GameEvent.of(savedVersion + 1 + i, code, null);
+            if (event.getType() == GameEvent.Type.JOIN) {
+                // Players never leave, so the slot still has the player who joined
+                event = GameEvent.of(event.getVersion(), code, game.getPlayer(event.getSlot()).getName());
+            }
+            unsaved.add(event);
+        }
+        return unsaved;
+    }
+
+    /**
+     * Sets the events of changes saved only in a journal: the version saved before them and their events, which must
+     * lead up to the version of the game.
+     */
+    public void setEvents(Game game, long savedVersion, List<GameEvent> unsaved) {
+        if (savedVersion + unsaved.size() != game.getVersion()) {
+            throw new IllegalArgumentException("The events don't lead from version " + savedVersion + " to " + game.getVersion());
+        }
+        this.savedVersion = savedVersion;
+        this.events = new byte[unsaved.size()];
+        for (int i = 0; i < unsaved.size(); i++) {
+            events[i] = unsaved.get(i).getCode();
+        }
+        this.eventCount = unsaved.size();
+    }
+
+    /** Position in the hand of the player in the slot of the first card kept since the last save. */
+    public int getUnsavedFrom(int slot, Hand hand) {
+        return unsavedFrom[slot] != NOT_KEPT ? unsavedFrom[slot] : hand.handSize();
+    }
+
+    /** True if the hand of the player in the slot was emptied since the last save, so the saved cards must be deleted. */
+    public boolean isHandCleared(int slot) {
+        return (clearedHands & 1 << slot) != 0;
+    }
+
+    /** Called by repositories once the changes are saved. */
+    public void markSaved(Game game) {
+        parts = 0;
+        savedVersion = game.getVersion();
+        eventCount = 0;
+        Arrays.fill(unsavedFrom, NOT_KEPT);
+        clearedHands = 0;
+    }
+
+    /** Marks everything as changed, e.g. to save the game somewhere else: the saved cards are deleted and written again. */
+    public void markAllChanged(Game game) {
+        markAllChanged(game, true);
+    }
+
+    private void markAllChanged(Game game, boolean clearHands) {
+        parts = ALL_CHANGED;
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            parts |= PLAYER_CHANGED << slot;
+            unsavedFrom[slot] = 0;
+            if (clearHands) {
+                clearedHands |= 1 << slot;
+            }
+        }
+    }
+
+    /** Adds the changes of an older copy of the game that were never saved, so saving the game also writes them. */
+    public void mergeOlder(GameChanges older) {
+        parts |= older.parts;
+        savedVersion = older.savedVersion;
+        byte[] merged = Arrays.copyOf(older.events, older.eventCount + eventCount);
+        System.arraycopy(events, 0, merged, older.eventCount, eventCount);
+        events = merged;
+        eventCount += older.eventCount;
+        for (int slot = 0; slot < unsavedFrom.length; slot++) {
+            if (older.unsavedFrom[slot] != NOT_KEPT
+                    && (unsavedFrom[slot] == NOT_KEPT || older.unsavedFrom[slot] < unsavedFrom[slot])) {
+                unsavedFrom[slot] = older.unsavedFrom[slot];
+            }
+        }
+        clearedHands |= older.clearedHands;
+    }
+
+    private GameChanges copy() {
+        GameChanges copy = new GameChanges(savedVersion);
+        copy.parts = parts;
+        copy.events = Arrays.copyOf(events, eventCount);
+        copy.eventCount = eventCount;
+        System.arraycopy(unsavedFrom, 0, copy.unsavedFrom, 0, unsavedFrom.length);
+        copy.clearedHands = clearedHands;
+        return copy;
+    }
+}
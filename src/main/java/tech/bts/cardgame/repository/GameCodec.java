@@ -0,0 +1,167 @@
+package tech.bts.cardgame.repository;
+
+import tech.bts.cardgame.model.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of the whole state of a game, e.g. for the records of the memory journal and the snapshots of the event
+ * log, and of a run of events of a game. Cards are written as their index in the card table (one byte).
+ */
+class GameCodec {
+
+    private static final int NO_CARD = -1;
+
+    static byte[] encode(Game game) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(game, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The game followed by its saved version and its unsaved events (see GameChanges.getEvents), e.g. for the records
+     * of the write-behind journal, which the store saves later with their events.
+     */
+    static byte[] encodeWithEvents(Game game) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            GameChanges changes = GameChanges.of(game);
+            write(game, out);
+            out.writeLong(changes.getSavedVersion());
+            out.write(encodeEvents(changes.getEvents(game)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(Game game, DataOutputStream out) throws IOException {
+        out.writeLong(game.getId());
+        out.writeByte(game.getState().ordinal());
+        out.writeBoolean(game.getSeed() != null);
+        out.writeLong(game.getSeed() != null ? game.getSeed() : 0);
+        out.writeLong(game.getCreated());
+        out.writeInt(game.getRound());
+        out.writeLong(game.getVersion());
+        byte[] cards = game.getDeck().getCardIndexes();
+        out.writeShort(cards.length);
+        out.write(cards);
+        out.writeByte(game.getPlayerCount());
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            Player player = game.getPlayer(slot);
+            out.writeUTF(player.getName());
+            out.writeByte(player.getDiscardCounter());
+            out.writeByte(player.getPickedCard() != null ? player.getPickedCard().getIndex() : NO_CARD);
+            out.writeInt(player.getPoint());
+            Hand hand = player.getHand();
+            out.writeByte(hand.handSize());
+            for (int position = 0; position < hand.handSize(); position++) {
+                out.writeByte(hand.cardIndex(position));
+            }
+        }
+    }
+
+    /** Id of the game of a record, without decoding the rest. */
+    static long idOf(byte[] bytes) {
+        long id = 0;
+        for (int i = 0; i < 8; i++) {
+            id = id << 8 | bytes[i] & 0xFF;
+        }
+        return id;
+    }
+
+    static Game decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Reads a game written by encodeWithEvents; one written by encode has no unsaved events. */
+    static Game decodeWithEvents(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Game game = read(in);
+            if (in.available() > 0) {
+                long savedVersion = in.readLong();
+                byte[] events = new byte[in.available()];
+                in.readFully(events);
+                GameChanges.of(game).setEvents(game, savedVersion, decodeEvents(savedVersion + 1, events));
+            }
+            return game;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Game read(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        Game.State state = Game.State.values()[in.readByte()];
+        boolean seeded = in.readBoolean();
+        long seed = in.readLong();
+        long created = in.readLong();
+        int round = in.readInt();
+        long version = in.readLong();
+        byte[] cards = new byte[in.readShort()];
+        in.readFully(cards);
+        int playerCount = in.readByte();
+        List<Player> players = new ArrayList<>(playerCount);
+        for (int slot = 0; slot < playerCount; slot++) {
+            String name = in.readUTF();
+            int discardCounter = in.readByte();
+            int pickedCard = in.readByte();
+            int point = in.readInt();
+            int handSize = in.readByte();
+            List<Card> hand = new ArrayList<>(handSize);
+            for (int position = 0; position < handSize; position++) {
+                hand.add(Card.of(in.readByte()));
+            }
+            players.add(new Player(name, discardCounter, pickedCard != NO_CARD ? Card.of(pickedCard) : null, new Hand(hand), point));
+        }
+        Game game = new Game(id, new Deck(cards, cards.length), seeded ? seed : null, created, state, round, players);
+        game.setVersion(version);
+        GameChanges.saved(game);
+        return game;
+    }
+
+    /** The events, which must have consecutive versions: one byte each, followed by the name of the player for a JOIN. */
+    static byte[] encodeEvents(List<GameEvent> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(events.size() + 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (GameEvent event : events) {
+                out.writeByte(event.getCode());
+                if (event.getType() == GameEvent.Type.JOIN) {
+                    out.writeUTF(event.getPlayer());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads the events written by encodeEvents, the first one having the given version. */
+    static List<GameEvent> decodeEvents(long firstVersion, byte[] bytes) {
+        List<GameEvent> events = new ArrayList<>(bytes.length);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            long version = firstVersion;
+            while (in.available() > 0) {
+                byte code = in.readByte();
+                GameEvent event = GameEvent.of(version++, code, null);
+                if (event.getType() == GameEvent.Type.JOIN) {
+                    event = GameEvent.of(event.getVersion(), code, in.readUTF());
+                }
+                events.add(event);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return events;
+    }
+}
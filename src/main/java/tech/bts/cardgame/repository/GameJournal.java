@@ -0,0 +1,249 @@
+package tech.bts.cardgame.repository;
+
+import tech.bts.cardgame.model.Game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of game states, split in segment files named after the position of their first record.
+ * <p>
+ * A record is the length, the CRC32 and the {@link GameCodec} bytes of a game, with its unsaved events when appended
+ * as a game. Segments are created with their whole
+ * size and memory-mapped, so appending a record is a copy into the page cache; the zeros after the last record end
+ * the segment. Reading stops at the first record that is incomplete or corrupt, i.e. one that was being written when
+ * the process died. {@link #sync(long)} is a group commit: one fsync makes durable the records of every thread
+ * waiting for it.
+ */
+class GameJournal implements Closeable {
+
+    /** Receives the records of the journal, with the position of each one. */
+    interface RecordConsumer {
+        void accept(long position, byte[] record);
+    }
+
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    // Start position of each segment, the last one is written; only that one stays mapped
+    private final NavigableMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private MappedByteBuffer buffer;
+    private long position;
+    private final Object syncLock = new Object();
+    private volatile long synced;
+    private long syncs;
+
+    GameJournal(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the latest state of each game in the journal, with the events of all its records (see append(Game)), then
+     * starts a new segment for the next records.
+     */
+    synchronized List<Game> recover() {
+        Map<Long, Game> games = new LinkedHashMap<>();
+        recover(0, (position, record) -> {
+            Game game = GameCodec.decodeWithEvents(record);
+            Game older = games.remove(game.getId());
+            GameChanges changes = GameChanges.of(game);
+            if (older != null && changes.getSavedVersion() == older.getVersion()) {
+                // Only the events since the older record: it has the ones before
+                changes.mergeOlder(GameChanges.of(older));
+            }
+            games.put(game.getId(), game);
+        });
+        return new ArrayList<>(games.values());
+    }
+
+    /**
+     * Gives the records from the given position on to the consumer, in order, then starts a new segment for the next
+     * records. Segments are mapped to be read, and those ending before the position are skipped.
+     */
+    synchronized void recover(long from, RecordConsumer consumer) {
+        long end = 0;
+        try {
+            List<Path> files = segmentFiles();
+            for (int i = 0; i < files.size(); i++) {
+                Path segment = files.get(i);
+                long start = startOf(segment);
+                segments.put(start, null);
+                if (i + 1 < files.size() && startOf(files.get(i + 1)) <= from) {
+                    end = Math.max(end, startOf(files.get(i + 1)));
+                    continue;
+                }
+                int valid;
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    valid = scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), start, from, consumer);
+                    if (valid < channel.size()) {
+                        // Drop the zeros or the torn record after the last record
+                        channel.truncate(valid);
+                    }
+                }
+                end = Math.max(end, start + valid);
+            }
+            position = end;
+            synced = end;
+            roll(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Reads the records of a segment and returns the bytes they take. */
+    private static int scan(ByteBuffer segment, long start, long from, RecordConsumer consumer) {
+        int valid = 0;
+        while (segment.remaining() >= HEADER_BYTES) {
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length <= 0 || length > segment.remaining()) {
+                break;
+            }
+            byte[] record = new byte[length];
+            segment.get(record);
+            if (checksum != checksum(record)) {
+                break;
+            }
+            if (start + valid >= from) {
+                consumer.accept(start + valid, record);
+            }
+            valid = segment.position();
+        }
+        return valid;
+    }
+
+    /** Appends the state of the game with its unsaved events and returns the position after it, to wait for it with sync. */
+    long append(Game game) {
+        return append(GameCodec.encodeWithEvents(game));
+    }
+
+    /** Appends a record encoded by GameCodec and returns the position after it. */
+    synchronized long append(byte[] record) {
+        try {
+            if (buffer == null || buffer.remaining() < HEADER_BYTES + record.length) {
+                roll(HEADER_BYTES + record.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.putInt(record.length).putInt(checksum(record)).put(record);
+        position += HEADER_BYTES + record.length;
+        return position;
+    }
+
+    /** Waits until the records before the given position are on disk. */
+    void sync(long position) {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            MappedByteBuffer current;
+            synchronized (this) {
+                target = this.position;
+                current = buffer;
+            }
+            current.force();
+            syncs++;
+            synced = target;
+        }
+    }
+
+    /** Position after the last record. */
+    synchronized long position() {
+        return position;
+    }
+
+    /** Deletes the segments whose records are all before the given position. */
+    synchronized void deleteBefore(long position) {
+        Long next;
+        while (!segments.isEmpty() && (next = segments.higherKey(segments.firstKey())) != null && next <= position) {
+            long start = segments.firstKey();
+            segments.remove(start);
+            try {
+                Files.deleteIfExists(segmentPath(start));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    long syncCount() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    /** Starts a segment at the current position, with room for at least the given bytes. */
+    private void roll(int minimumBytes) throws IOException {
+        if (buffer != null) {
+            // Earlier segments are complete: make them durable before writing to the next one
+            buffer.force();
+            segments.put(segments.lastKey(), null);
+        }
+        long size = Math.max(segmentBytes, minimumBytes);
+        try (FileChannel channel = FileChannel.open(segmentPath(position), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        segments.put(position, buffer);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(GameJournal::startOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%020d%s", start, SUFFIX));
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+    /** Forces the records to disk; the journal can't be written after. */
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        segments.clear();
+    }
+}
@@ -1,5 +1,105 @@
 package tech.bts.cardgame.repository;
 
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 public interface GameRepository {
 
+    /** Besides when its whole state is written, a game is snapshotted in the event log every this many versions. */
+    int SNAPSHOT_INTERVAL = 32;
+
+    /** Saves a new game and sets its id. */
+    void create(Game game);
+
+    void update(Game game);
+
+    /** Creates the games with id 0 and updates the others; repositories may save them all at once. */
+    default void saveAll(Collection<Game> games) {
+        for (Game game : games) {
+            if (game.getId() == 0) {
+                create(game);
+            } else {
+                update(game);
+            }
+        }
+    }
+
+    /** Returns the game with the given id, or null if there is none. */
+    Game getById(long id);
+
+    /** Version of the game with the given id (see Game.getVersion()), or null if there is none; may read less than getById. */
+    default Long getVersion(long id) {
+        Game game = getById(id);
+        return game != null ? Long.valueOf(game.getVersion()) : null;
+    }
+
+    /** Streams all the games; the stream may hold resources, so close it when done (try-with-resources). */
+    Stream<Game> getAll();
+
+    /** Streams the games matching the search, ordered by id; close the stream when done. */
+    Stream<Game> stream(GameSearch gameSearch);
+
+    default List<Game> find(GameSearch gameSearch) {
+        try (Stream<Game> games = stream(gameSearch)) {
+            return games.collect(Collectors.toList());
+        }
+    }
+
+    /** Like stream, but only reads what the lists of games show. */
+    Stream<GameSummary> streamSummaries(GameSearch gameSearch);
+
+    default List<GameSummary> findSummaries(GameSearch gameSearch) {
+        try (Stream<GameSummary> summaries = streamSummaries(gameSearch)) {
+            return summaries.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * The events of the game after version after, up to version to, in the order of their versions; empty if there
+     * are none or the repository keeps no event log.
+     */
+    default List<GameEvent> getEvents(long gameId, long after, long to) {
+        return Collections.emptyList();
+    }
+
+    /** The latest snapshot of the game at or before the given version, or null if there is none. */
+    default Game getSnapshot(long gameId, long version) {
+        return null;
+    }
+
+    /**
+     * The game as it was at the given version: its latest snapshot up to then with the events that follow it applied.
+     * Null if the game or the version doesn't exist, or if the log misses events.
+     */
+    default Game replay(long gameId, long version) {
+        Game game = getSnapshot(gameId, version);
+        if (game == null) {
+            return null;
+        }
+        for (GameEvent event : getEvents(gameId, game.getVersion(), version)) {
+            if (event.getVersion() != game.getVersion() + 1) {
+                return null;
+            }
+            game.apply(event);
+        }
+        if (game.getVersion() != version) {
+            return null;
+        }
+        GameChanges.saved(game);
+        return game;
+    }
+
+    /** Whether saving the game also writes a snapshot of it: when it's written whole, or it passed a multiple of SNAPSHOT_INTERVAL. */
+    static boolean isSnapshotDue(Game game, GameChanges changes) {
+        return (changes.getParts() & GameChanges.DECK_REPLACED) != 0
+                || game.getVersion() / SNAPSHOT_INTERVAL != changes.getSavedVersion() / SNAPSHOT_INTERVAL;
+    }
 }
@@ -0,0 +1,87 @@
+package tech.bts.cardgame.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import tech.bts.cardgame.metrics.ConnectionPoolMetrics;
+import tech.bts.cardgame.util.DataSourceUtil;
+
+import java.nio.file.Paths;
+
+/**
+ * Creates the game repository chosen with the property cardgame.repository (memory, jdbc or mongo).
+ * Only the chosen one is created, so e.g. no Mongo client is opened unless Mongo is used.
+ */
+@Configuration
+public class GameRepositoryConfig {
+
+    /** Keeps the games in memory only, unless cardgame.memory.data-dir is set (see GameRepositoryMap). */
+    @Bean(destroyMethod = "close")
+    @Qualifier("store")
+    @ConditionalOnProperty(name = "cardgame.repository", havingValue = "memory")
+    public GameRepositoryMap gameRepositoryMap(@Value("${cardgame.memory.data-dir:}") String dataDir,
+                                               @Value("${cardgame.memory.journal-segment-bytes:67108864}") long journalSegmentBytes,
+                                               @Value("${cardgame.memory.journal-sync:interval}") String journalSync,
+                                               @Value("${cardgame.memory.sync-interval-ms:100}") long syncIntervalMillis,
+                                               @Value("${cardgame.memory.snapshot-bytes:268435456}") long snapshotBytes) {
+        if (dataDir.isEmpty()) {
+            return new GameRepositoryMap();
+        }
+        return new GameRepositoryMap(Paths.get(dataDir), journalSegmentBytes,
+                GameRepositoryMap.SyncPolicy.valueOf(journalSync.toUpperCase()), syncIntervalMillis, snapshotBytes);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cardgame.repository", havingValue = "jdbc", matchIfMissing = true)
+    public ConnectionPoolMetrics connectionPoolMetrics() {
+        return new ConnectionPoolMetrics();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "cardgame.repository", havingValue = "jdbc", matchIfMissing = true)
+    public HikariDataSource gameDataSource(@Value("${cardgame.jdbc.url:" + DataSourceUtil.URL_IN_PATH + "}") String url,
+                                           @Value("${cardgame.jdbc.username:" + DataSourceUtil.USERNAME + "}") String username,
+                                           @Value("${cardgame.jdbc.password:" + DataSourceUtil.PASSWORD + "}") String password,
+                                           @Value("${cardgame.jdbc.pool.maximum-size:10}") int maximumPoolSize,
+                                           @Value("${cardgame.jdbc.pool.minimum-idle:10}") int minimumIdle,
+                                           ConnectionPoolMetrics connectionPoolMetrics) {
+        return DataSourceUtil.createPool(url, username, password, maximumPoolSize, minimumIdle, connectionPoolMetrics);
+    }
+
+    @Bean
+    @Qualifier("store")
+    @ConditionalOnProperty(name = "cardgame.repository", havingValue = "jdbc", matchIfMissing = true)
+    public GameRepository gameRepositoryJdbc(HikariDataSource gameDataSource,
+                                             @Value("${cardgame.jdbc.initialize-schema:true}") boolean initializeSchema) {
+        GameRepositoryJdbc repository = new GameRepositoryJdbc(gameDataSource);
+        if (initializeSchema) {
+            repository.createSchema();
+        }
+        return repository;
+    }
+
+    @Bean(destroyMethod = "close")
+    @Qualifier("store")
+    @ConditionalOnProperty(name = "cardgame.repository", havingValue = "mongo")
+    public GameRepositoryMongo gameRepositoryMongo() {
+        return new GameRepositoryMongo();
+    }
+
+    /** Wraps the chosen repository when cardgame.write-behind.enabled is true, and is then the one used. */
+    @Bean(destroyMethod = "close")
+    @Primary
+    @ConditionalOnProperty(name = "cardgame.write-behind.enabled", havingValue = "true")
+    public WriteBehindGameRepository writeBehindGameRepository(@Qualifier("store") GameRepository store,
+                                                               @Value("${cardgame.write-behind.journal-dir:${user.home}/cardgame-journal}") String journalDir,
+                                                               @Value("${cardgame.write-behind.journal-segment-bytes:16777216}") long journalSegmentBytes,
+                                                               @Value("${cardgame.write-behind.journal-sync:true}") boolean journalSync,
+                                                               @Value("${cardgame.write-behind.flush-interval-ms:50}") long flushIntervalMillis,
+                                                               @Value("${cardgame.write-behind.flush-size:256}") int flushSize) {
+        return new WriteBehindGameRepository(store, Paths.get(journalDir), journalSegmentBytes, journalSync,
+                flushIntervalMillis, flushSize);
+    }
+}
@@ -1,139 +1,582 @@
 package tech.bts.cardgame.repository;
 
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.stereotype.Repository;
-import tech.bts.cardgame.model.Deck;
-import tech.bts.cardgame.model.Game;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import tech.bts.cardgame.model.*;
 import tech.bts.cardgame.util.DataSourceUtil;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.*;
-
-import static org.apache.tomcat.util.buf.StringUtils.join;
-
-@Repository
-public class GameRepositoryJdbc {
-
-    //private DataSource dataSource;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores the whole state of the games in the tables of sql-scripts/schema.sql.
+ * <p>
+ * Saving a game only writes the parts that changed since it was saved (see {@link GameChanges}):
+ * e.g. picking a card updates the size of the deck and the row of the player, keeping it inserts one hand card.
+ * The events of the save are appended to the event log as one row, in the same transaction.
+ * When several games are saved together, each kind of statement is sent as one batch.
+ */
+public class GameRepositoryJdbc implements GameRepository {
+
+    private DataSource dataSource;
     private JdbcTemplate jdbcTemplate; //template pattern (other patterns: observer, builder, iteration, .etc)
 
-    final String INSERT_STATEMENT = "insert into games (state, players) values (?, ?)";
-    final String UPDATE_STATEMENT = "update games set state = ?, players = ? where id = ?";
+    final String INSERT_GAME = "insert into games (state, seed, round, created, version, deck_size) values (?, ?, ?, ?, ?, ?)";
+    // Every change moves the version; a pick moves the size of the deck with it
+    final String UPDATE_GAME = "update games set state = ?, round = ?, version = ?, deck_size = ? where id = ?";
+    final String MERGE_GAME = "merge into games (id, state, seed, round, created, version, deck_size) key (id) values (?, ?, ?, ?, ?, ?, ?)";
+    final String MERGE_DECK = "merge into game_decks (game_id, cards, size) key (game_id) values (?, ?, ?)";
+    final String MERGE_PLAYER = "merge into game_players (game_id, slot, name, discard_counter, picked_card, points) key (game_id, slot) values (?, ?, ?, ?, ?, ?)";
+    final String DELETE_HAND = "delete from game_hand_cards where game_id = ? and slot = ?";
+    final String INSERT_HAND_CARD = "insert into game_hand_cards (game_id, slot, position, card) values (?, ?, ?, ?)";
+    final String INSERT_EVENTS = "insert into game_events (game_id, version, events) values (?, ?, ?)";
+    final String MERGE_SNAPSHOT = "merge into game_snapshots (game_id, version, state) key (game_id, version) values (?, ?, ?)";
+
+    // Games saved before deck_size was a column of games have the size in game_decks only
+    final String SELECT_GAMES = "select g.id, g.state, g.seed, g.round, g.created, g.version, d.cards, coalesce(g.deck_size, d.size) size "
+            + "from games g left join game_decks d on d.game_id = g.id";
+    final String SELECT_BY_ID = SELECT_GAMES + " where g.id = ?";
+    final String SELECT_VERSION = "select version from games where id = ?";
+    final String SELECT_SUMMARIES = "select g.id, g.state, g.created from games g";
+    // The players, player names and hand cards of a chunk of games, by their ids
+    final String SELECT_PLAYERS = "select game_id, slot, name, discard_counter, picked_card, points from game_players where game_id in "
+            + chunkParameters() + " order by game_id, slot";
+    final String SELECT_PLAYER_NAMES = "select game_id, name from game_players where game_id in "
+            + chunkParameters() + " order by game_id, slot";
+    final String SELECT_HAND_CARDS = "select game_id, slot, card from game_hand_cards where game_id in "
+            + chunkParameters() + " order by game_id, slot, position";
+    // From the row with the first event wanted, which may start before it when its save had several events
+    final String SELECT_EVENTS = "select version, events from game_events where game_id = ? and version <= ? and version >= "
+            + "coalesce((select max(version) from game_events where game_id = ? and version <= ?), 0) order by version";
+    final String SELECT_SNAPSHOT = "select state from game_snapshots where game_id = ? and version <= ? order by version desc limit 1";
+
+    // Games read before loading their players and hand cards
+    private static final int READ_CHUNK_SIZE = 256;
+
+    // Statements of a save, in the order their batches are executed
+    private final String[] SAVE_STATEMENTS = {UPDATE_GAME, MERGE_GAME, MERGE_DECK, MERGE_PLAYER, DELETE_HAND, INSERT_HAND_CARD,
+            INSERT_EVENTS, MERGE_SNAPSHOT};
 
     public GameRepositoryJdbc() {
-        //this.dataSource = DataSourceUtil.getDataSourceInPath();
-        this.jdbcTemplate = new JdbcTemplate(DataSourceUtil.getDataSourceInPath());
+        this(DataSourceUtil.getDataSourceInPath());
     }
 
-    public void create(Game game){
-        jdbcTemplate.update(INSERT_STATEMENT, game.getState(), join(game.getPlayerNames(),','));
+    public GameRepositoryJdbc(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
 
-        /**try {
+    /** Creates the tables and indexes that don't exist yet. */
+    public void createSchema() {
+        jdbcTemplate.execute((Connection connection) -> {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql-scripts/schema.sql"));
+            return null;
+        });
+    }
 
-            Connection connection = dataSource.getConnection();
+    @Override
+    public void create(Game game){
+        saveAll(Collections.singletonList(game));
+    }
+
+    @Override
+    public void update(Game game){
+        saveAll(Collections.singletonList(game));
+    }
 
-            PreparedStatement preparedStatement = connection.prepareStatement("insert into games(state, players) values(?,?)");
-            preparedStatement.setString(1, game.getState().toString());
-            preparedStatement.setString(2, join(game.getPlayerNames(),',')); //NULL in this case
-            preparedStatement.executeUpdate();
+    /** Inserts a new game (id 0) or writes the changes of an existing one. */
+    public void createOrUpdate(Game game) {
+        saveAll(Collections.singletonList(game));
+    }
 
-            preparedStatement.close();
-            connection.close();
+    /** Saves the games in one transaction, with one batch per kind of statement. */
+    @Override
+    public void saveAll(Collection<Game> games) {
 
-        } catch (Exception e) {
-            throw new RuntimeException("Error creating the game", e);
-        }*/
+        for (Game game : games) {
+            // Before the new games get their ids: those are tracked as new
+            GameChanges.of(game);
+        }
+        jdbcTemplate.execute((Connection connection) -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Batches batches = new Batches(connection)) {
+                List<Game> newGames = games.stream().filter(game -> game.getId() == 0).collect(Collectors.toList());
+                Set<Game> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+                inserted.addAll(newGames);
+                insertGames(connection, newGames);
+                for (Game game : games) {
+                    addChanges(batches, game, inserted.contains(game));
+                }
+                batches.execute();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+        for (Game game : games) {
+            GameChanges.of(game).markSaved(game);
+        }
     }
 
-    public void update(Game game){
-        jdbcTemplate.update(UPDATE_STATEMENT, game.getState(), join(game.getPlayerNames(),','), game.getId());
+    private void insertGames(Connection connection, List<Game> newGames) throws SQLException {
+
+        if (newGames.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_GAME, Statement.RETURN_GENERATED_KEYS)) {
+            for (Game game : newGames) {
+                statement.setString(1, game.getState().name());
+                statement.setObject(2, game.getSeed());
+                statement.setInt(3, game.getRound());
+                statement.setLong(4, game.getCreated());
+                statement.setLong(5, game.getVersion());
+                statement.setInt(6, game.getDeckSize());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                for (Game game : newGames) {
+                    keys.next();
+                    game.setId(keys.getLong(1));
+                }
+            }
+        }
     }
 
-    public void createOrUpdate(Game game) {
+    private void addChanges(Batches batches, Game game, boolean isNew) throws SQLException {
+
+        long id = game.getId();
+        GameChanges gameChanges = GameChanges.of(game);
+        int changes = gameChanges.getParts();
+
+        if (!isNew && (changes & GameChanges.DECK_REPLACED) != 0) {
+            PreparedStatement statement = batches.get(MERGE_GAME);
+            statement.setLong(1, id);
+            statement.setString(2, game.getState().name());
+            statement.setObject(3, game.getSeed());
+            statement.setInt(4, game.getRound());
+            statement.setLong(5, game.getCreated());
+            statement.setLong(6, game.getVersion());
+            statement.setInt(7, game.getDeckSize());
+            statement.addBatch();
+        } else if (!isNew && changes != 0) {
+            PreparedStatement statement = batches.get(UPDATE_GAME);
+            statement.setString(1, game.getState().name());
+            statement.setInt(2, game.getRound());
+            statement.setLong(3, game.getVersion());
+            statement.setInt(4, game.getDeckSize());
+            statement.setLong(5, id);
+            statement.addBatch();
+        }
+
+        if ((changes & GameChanges.DECK_REPLACED) != 0) {
+            PreparedStatement statement = batches.get(MERGE_DECK);
+            statement.setLong(1, id);
+            statement.setBytes(2, game.getDeck().getCardIndexes());
+            statement.setInt(3, game.getDeckSize());
+            statement.addBatch();
+        }
 
-        Game game1 = getById(game.getId());
-        if(game1 != null) {
-            update(game);
-        } else {
-            create(game);
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            if (!GameChanges.isPlayerChanged(changes, slot)) {
+                continue;
+            }
+            Player player = game.getPlayer(slot);
+            PreparedStatement statement = batches.get(MERGE_PLAYER);
+            statement.setLong(1, id);
+            statement.setInt(2, slot);
+            statement.setString(3, player.getName());
+            statement.setInt(4, player.getDiscardCounter());
+            statement.setObject(5, player.getPickedCard() != null ? player.getPickedCard().getIndex() : null);
+            statement.setInt(6, player.getPoint());
+            statement.addBatch();
+
+            Hand hand = player.getHand();
+            if (gameChanges.isHandCleared(slot)) {
+                statement = batches.get(DELETE_HAND);
+                statement.setLong(1, id);
+                statement.setInt(2, slot);
+                statement.addBatch();
+            }
+            for (int position = gameChanges.getUnsavedFrom(slot, hand); position < hand.handSize(); position++) {
+                statement = batches.get(INSERT_HAND_CARD);
+                statement.setLong(1, id);
+                statement.setInt(2, slot);
+                statement.setInt(3, position);
+                statement.setInt(4, hand.cardIndex(position));
+                statement.addBatch();
+            }
         }
+
+        List<GameEvent> events = gameChanges.getEvents(game);
+        if (!events.isEmpty()) {
+            PreparedStatement statement = batches.get(INSERT_EVENTS);
+            statement.setLong(1, id);
+            statement.setLong(2, events.get(0).getVersion());
+            statement.setBytes(3, GameCodec.encodeEvents(events));
+            statement.addBatch();
+        }
+        if (GameRepository.isSnapshotDue(game, gameChanges)) {
+            PreparedStatement statement = batches.get(MERGE_SNAPSHOT);
+            statement.setLong(1, id);
+            statement.setLong(2, game.getVersion());
+            statement.setBytes(3, GameCodec.encode(game));
+            statement.addBatch();
+        }
+    }
+
+    @Override
+    public List<GameEvent> getEvents(long gameId, long after, long to) {
+        List<GameEvent> events = new ArrayList<>();
+        jdbcTemplate.query(SELECT_EVENTS, rs -> {
+            for (GameEvent event : GameCodec.decodeEvents(rs.getLong("version"), rs.getBytes("events"))) {
+                if (event.getVersion() > after && event.getVersion() <= to) {
+                    events.add(event);
+                }
+            }
+        }, gameId, to, gameId, after + 1);
+        return events;
+    }
+
+    @Override
+    public Game getSnapshot(long gameId, long version) {
+        List<byte[]> snapshots = jdbcTemplate.queryForList(SELECT_SNAPSHOT, byte[].class, gameId, version);
+        return snapshots.isEmpty() ? null : GameCodec.decode(snapshots.get(0));
+    }
+
+    @Override
+    public Long getVersion(long id) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION, Long.class, id);
+        return versions.isEmpty() ? null : versions.get(0);
     }
 
+    @Override
     public Game getById(long id) {
-        RowMapper<Game> rowMapper = (rs1, rowNum) -> getGame(rs1);
-        return jdbcTemplate.queryForObject("select * from games where id = " + id, rowMapper);
 
-        /**return applyStatement((statement -> {
-            ResultSet rs = statement.executeQuery("select * from games where id = " + id);
-            Game game = null;
-            if (rs.next()) {
-                game = getGame(rs);
+        return jdbcTemplate.execute((Connection connection) -> {
+            try (GameReader reader = new GameReader(connection);
+                 PreparedStatement statement = connection.prepareStatement(SELECT_BY_ID)) {
+                statement.setLong(1, id);
+                try (ResultSet rs = statement.executeQuery()) {
+                    List<Game> games = reader.read(rs, 1);
+                    return games.isEmpty() ? null : games.get(0);
+                }
             }
-            rs.close();
-            return game;
-        }));*/
+        });
     }
 
-    public List<Game> getAll() {
+    /** Streams the games while they are read from the result set; closing the stream releases the connection. */
+    @Override
+    public Stream<Game> getAll() {
 
-        return jdbcTemplate.query("select * from games", (rs1, rowNum) -> getGame(rs1));
+        return stream(new GameSearch());
+    }
 
-        /**return applyStatement((statement -> {
-            ResultSet rs = statement.executeQuery("select * from games");
-            List<Game> games = new ArrayList<>();
-            while (rs.next()) {
-                Game game = getGame(rs);
-                games.add(game);
+    @Override
+    public Stream<Game> stream(GameSearch gameSearch) {
+
+        List<Object> args = new ArrayList<>();
+        String sql = search(SELECT_GAMES, gameSearch, args);
+        return stream(sql, GameReader::new, args.toArray());
+    }
+
+    /** Reads the columns of games and the player names, without the decks and hands. */
+    @Override
+    public Stream<GameSummary> streamSummaries(GameSearch gameSearch) {
+
+        List<Object> args = new ArrayList<>();
+        String sql = search(SELECT_SUMMARIES, gameSearch, args);
+        return stream(sql, SummaryReader::new, args.toArray());
+    }
+
+    /** Adds the criteria of the search to the select from games g; each of them is served by an index (see schema.sql). */
+    private String search(String select, GameSearch gameSearch, List<Object> args) {
+
+        StringBuilder sql = new StringBuilder(select);
+        if (gameSearch.getPlayer() != null) {
+            sql.append(" join game_players p on p.game_id = g.id and p.name = ?");
+            args.add(gameSearch.getPlayer());
+        }
+        sql.append(" where 1 = 1");
+        if (gameSearch.getAfterId() > 0) {
+            sql.append(gameSearch.isNewestFirst() ? " and g.id < ?" : " and g.id > ?");
+            args.add(gameSearch.getAfterId());
+        }
+        if (gameSearch.getState() != null) {
+            sql.append(" and g.state = ?");
+            args.add(gameSearch.getState().name());
+        }
+        if (gameSearch.getCreatedAfter() > 0) {
+            sql.append(" and g.created > ?");
+            args.add(gameSearch.getCreatedAfter());
+        }
+        sql.append(gameSearch.isNewestFirst() ? " order by g.id desc" : " order by g.id");
+        if (gameSearch.getLimit() > 0) {
+            sql.append(" limit ?");
+            args.add(gameSearch.getLimit());
+        }
+        return sql.toString();
+    }
+
+    private <T> Stream<T> stream(String sql, ReaderFactory<T> readerFactory, Object... args) {
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        ChunkReader<T> reader = null;
+        PreparedStatement statement = null;
+        try {
+            reader = readerFactory.open(connection);
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(READ_CHUNK_SIZE);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
             }
-            rs.close();
-            return games;
-        }));*/
+            ResultSet rs = statement.executeQuery();
+            ChunkReader<T> openReader = reader;
+            PreparedStatement openStatement = statement;
+            Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+
+                private Iterator<T> chunk = Collections.emptyIterator();
+
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        if (!chunk.hasNext()) {
+                            chunk = openReader.read(rs, READ_CHUNK_SIZE).iterator();
+                            if (!chunk.hasNext()) {
+                                return false;
+                            }
+                        }
+                        action.accept(chunk.next());
+                        return true;
+                    } catch (SQLException e) {
+                        throw jdbcTemplate.getExceptionTranslator().translate("Reading games", sql, e);
+                    }
+                }
+            };
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(openStatement);
+                openReader.close();
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            });
+        } catch (SQLException e) {
+            JdbcUtils.closeStatement(statement);
+            if (reader != null) {
+                reader.close();
+            }
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw jdbcTemplate.getExceptionTranslator().translate("Reading games", sql, e);
+        }
+    }
+
+    private interface ChunkReader<T> extends AutoCloseable {
+
+        /** Reads the next rows of the result set, at most count of them. */
+        List<T> read(ResultSet rs, int count) throws SQLException;
+
+        @Override
+        void close();
+    }
+
+    private interface ReaderFactory<T> {
+        ChunkReader<T> open(Connection connection) throws SQLException;
     }
 
-    private Game getGame(ResultSet rs) throws SQLException {
+    /** Reads summaries from rows of SELECT_SUMMARIES a chunk at a time, with the player names of the chunk in one query. */
+    private class SummaryReader implements ChunkReader<GameSummary> {
+
+        private final PreparedStatement selectNames;
 
-        int id = rs.getInt("id");
-        String players = rs.getString("players");
+        SummaryReader(Connection connection) throws SQLException {
+            this.selectNames = connection.prepareStatement(SELECT_PLAYER_NAMES);
+        }
 
-        Game game = new Game(new Deck());
-        game.setId(id);
+        @Override
+        public List<GameSummary> read(ResultSet rs, int count) throws SQLException {
+            List<Long> ids = new ArrayList<>(count);
+            List<Game.State> states = new ArrayList<>(count);
+            List<Long> created = new ArrayList<>(count);
+            while (ids.size() < count && rs.next()) {
+                ids.add(rs.getLong("id"));
+                states.add(Game.State.valueOf(rs.getString("state")));
+                created.add(rs.getLong("created"));
+            }
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            Map<Long, List<String>> names = new HashMap<>();
+            bindChunk(selectNames, ids);
+            try (ResultSet nameRs = selectNames.executeQuery()) {
+                while (nameRs.next()) {
+                    names.computeIfAbsent(nameRs.getLong("game_id"), id -> new ArrayList<>()).add(nameRs.getString("name"));
+                }
+            }
 
-        if (players != null) {
-            String[] usernames = players.split(",");
-            for (String username : usernames) {
-                game.join(username);
+            List<GameSummary> summaries = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                summaries.add(new GameSummary(ids.get(i), states.get(i), names.getOrDefault(ids.get(i), Collections.emptyList()), created.get(i)));
             }
+            return summaries;
         }
 
-        //g.setState(Game.State.valueOf(rs.getString("state")));
+        @Override
+        public void close() {
+            JdbcUtils.closeStatement(selectNames);
+        }
+    }
 
-        return game;
+    /** "(?, ?, ...)" with a parameter for each game of a chunk. */
+    private static String chunkParameters() {
+        return "(" + String.join(", ", Collections.nCopies(READ_CHUNK_SIZE, "?")) + ")";
     }
 
-    /**private interface Function<P, R> {
-        R apply(P t) throws Exception;
+    /** Binds the ids of a chunk to the parameters of chunkParameters(); those left get 0, the id of no game. */
+    private static void bindChunk(PreparedStatement statement, List<Long> ids) throws SQLException {
+        for (int i = 0; i < READ_CHUNK_SIZE; i++) {
+            statement.setLong(i + 1, i < ids.size() ? ids.get(i) : 0);
+        }
     }
 
-    private <T> T applyStatement(Function<Statement,T> executeStatement){
+    /**
+     * Reads games from rows of SELECT_GAMES a chunk at a time: the players and hand cards of a whole chunk
+     * are loaded with one query each, by the ids of its games, so a search whose ids are far apart doesn't read the
+     * games between them.
+     */
+    private class GameReader implements ChunkReader<Game> {
 
-        //Function interface -> takes an argument and returns a value
-        //Supplier interface -> doesn't take an argument and returns a value
-        //Consumer interface -> take an argument and doesn't return a value
+        private final PreparedStatement selectPlayers;
+        private final PreparedStatement selectHandCards;
 
-        try {
-            Connection connection = dataSource.getConnection();
-            Statement statement = connection.createStatement();
+        GameReader(Connection connection) throws SQLException {
+            this.selectPlayers = connection.prepareStatement(SELECT_PLAYERS);
+            this.selectHandCards = connection.prepareStatement(SELECT_HAND_CARDS);
+        }
+
+        @Override
+        public List<Game> read(ResultSet rs, int count) throws SQLException {
 
-            T result = executeStatement.apply(statement);
+            List<GameRow> rows = new ArrayList<>();
+            while (rows.size() < count && rs.next()) {
+                rows.add(new GameRow(rs));
+            }
+            if (rows.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Long> ids = rows.stream().map(row -> row.id).collect(Collectors.toList());
+
+            Map<Long, List<List<Card>>> hands = new HashMap<>();
+            bindChunk(selectHandCards, ids);
+            try (ResultSet cardRs = selectHandCards.executeQuery()) {
+                while (cardRs.next()) {
+                    List<List<Card>> gameHands = hands.computeIfAbsent(cardRs.getLong("game_id"), id -> new ArrayList<>());
+                    int slot = cardRs.getInt("slot");
+                    while (gameHands.size() <= slot) {
+                        gameHands.add(new ArrayList<>());
+                    }
+                    gameHands.get(slot).add(Card.of(cardRs.getInt("card")));
+                }
+            }
+
+            Map<Long, List<Player>> players = new HashMap<>();
+            bindChunk(selectPlayers, ids);
+            try (ResultSet playerRs = selectPlayers.executeQuery()) {
+                while (playerRs.next()) {
+                    long id = playerRs.getLong("game_id");
+                    int slot = playerRs.getInt("slot");
+                    int pickedCard = playerRs.getInt("picked_card");
+                    boolean picked = !playerRs.wasNull();
+                    List<List<Card>> gameHands = hands.getOrDefault(id, Collections.emptyList());
+                    Hand hand = slot < gameHands.size() ? new Hand(gameHands.get(slot)) : new Hand();
+                    players.computeIfAbsent(id, key -> new ArrayList<>()).add(new Player(playerRs.getString("name"),
+                            playerRs.getInt("discard_counter"), picked ? Card.of(pickedCard) : null, hand, playerRs.getInt("points")));
+                }
+            }
+
+            List<Game> games = new ArrayList<>(rows.size());
+            for (GameRow row : rows) {
+                Game game = new Game(row.id, row.deck, row.seed, row.created, row.state, row.round, players.getOrDefault(row.id, Collections.emptyList()));
+                game.setVersion(row.version);
+                GameChanges.saved(game);
+                games.add(game);
+            }
+            return games;
+        }
+
+        @Override
+        public void close() {
+            JdbcUtils.closeStatement(selectPlayers);
+            JdbcUtils.closeStatement(selectHandCards);
+        }
+    }
 
-            statement.close();
-            connection.close();
+    private static class GameRow {
+
+        private final long id;
+        private final Game.State state;
+        private final Long seed;
+        private final int round;
+        private final long created;
+        private final long version;
+        private final Deck deck;
+
+        GameRow(ResultSet rs) throws SQLException {
+            this.id = rs.getLong("id");
+            this.state = Game.State.valueOf(rs.getString("state"));
+            long seed = rs.getLong("seed");
+            this.seed = rs.wasNull() ? null : seed;
+            this.round = rs.getInt("round");
+            this.created = rs.getLong("created");
+            this.version = rs.getLong("version");
+            byte[] cards = rs.getBytes("cards");
+            this.deck = cards != null ? new Deck(cards, rs.getInt("size")) : new Deck();
+        }
+    }
 
-            return result;
+    /** The statements of a save, prepared when first needed and executed as one batch each. */
+    private class Batches implements AutoCloseable {
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        private final Connection connection;
+        private final PreparedStatement[] statements = new PreparedStatement[SAVE_STATEMENTS.length];
+
+        Batches(Connection connection) {
+            this.connection = connection;
         }
-    }*/
-}
\ No newline at end of file
+
+        PreparedStatement get(String sql) throws SQLException {
+            int i = Arrays.asList(SAVE_STATEMENTS).indexOf(sql);
+            if (statements[i] == null) {
+                statements[i] = connection.prepareStatement(sql);
+            }
+            return statements[i];
+        }
+
+        void execute() throws SQLException {
+            for (PreparedStatement statement : statements) {
+                if (statement != null) {
+                    statement.executeBatch();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (PreparedStatement statement : statements) {
+                JdbcUtils.closeStatement(statement);
+            }
+        }
+    }
+}
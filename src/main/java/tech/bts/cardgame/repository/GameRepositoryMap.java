@@ -1,32 +1,363 @@
 package tech.bts.cardgame.repository;
 
-import org.springframework.stereotype.Repository;
 import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
-@Repository
-public class GameRepositoryMap {
+/**
+ * Thread-safe in-memory repository. Besides the games ordered by id, it keeps their summaries and the ids
+ * of the games in each state, of each player and created at each time, updated on every create and update,
+ * and the event log of each game.
+ * <p>
+ * Created with a directory, the games survive restarts: every create and update appends the game to a memory-mapped
+ * journal ({@link GameJournal}), synced as the sync policy says. Each time the journal grew snapshotBytes, a snapshot
+ * of the latest record of every game is written in the background ({@link GameSnapshot}) and the journal segments
+ * before it are deleted. On startup the games are read from the latest snapshot and the journal after it.
+ * <p>
+ * The event logs are not journaled: after a restart, the history of a game starts at the version it was recovered
+ * with. Each log keeps the events of the last LOGGED_VERSIONS versions of its game, and the snapshots they follow,
+ * and is dropped once its game finishes, so only the games still being played take memory for their history.
+ */
+public class GameRepositoryMap implements GameRepository, AutoCloseable {
 
-    private Map<Long, Game> gameMap;
-    private long nextId;
+    /** When appends to the journal are synced to disk: before returning, every sync interval, or when the OS writes them. */
+    public enum SyncPolicy {ALWAYS, INTERVAL, NEVER}
+
+    /** Versions of a game its event log goes back, so replaying an older one returns null. */
+    public static final int LOGGED_VERSIONS = 32 * SNAPSHOT_INTERVAL;
+
+    private final ConcurrentNavigableMap<Long, Game> gameMap;
+    private final ConcurrentNavigableMap<Long, GameSummary> summaries;
+    private final Map<Long, IndexEntry> indexEntries;
+    private final Map<Game.State, NavigableSet<Long>> idsByState;
+    private final Map<String, NavigableSet<Long>> idsByPlayer;
+    // Creation time -> lowest id of the games created then or later; both ascend, see indexCreated
+    private final ConcurrentNavigableMap<Long, Long> firstIdsByCreated;
+    private final Map<Long, EventLog> eventLogs;
+    private final AtomicLong nextId;
+
+    private final Path directory;
+    private final GameJournal journal;
+    private final SyncPolicy syncPolicy;
+    private final long snapshotBytes;
+    // Latest journal record of each game, what a snapshot writes
+    private final Map<Long, byte[]> records;
+    private final ScheduledExecutorService persistence;
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private volatile long snapshotPosition;
 
     public GameRepositoryMap() {
-        gameMap = new HashMap<>();
-        nextId = 0;
+        this(null, 0, SyncPolicy.NEVER, 0, 0);
     }
 
+    public GameRepositoryMap(Path directory, long segmentBytes, SyncPolicy syncPolicy, long syncIntervalMillis, long snapshotBytes) {
+        gameMap = new ConcurrentSkipListMap<>();
+        summaries = new ConcurrentSkipListMap<>();
+        indexEntries = new ConcurrentHashMap<>();
+        idsByState = new EnumMap<>(Game.State.class);
+        for (Game.State state : Game.State.values()) {
+            idsByState.put(state, new ConcurrentSkipListSet<>());
+        }
+        idsByPlayer = new ConcurrentHashMap<>();
+        firstIdsByCreated = new ConcurrentSkipListMap<>();
+        eventLogs = new ConcurrentHashMap<>();
+        // 0 is the id of a game that was never saved
+        nextId = new AtomicLong(1);
+
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.snapshotBytes = snapshotBytes;
+        if (directory == null) {
+            journal = null;
+            records = null;
+            persistence = null;
+            return;
+        }
+        journal = new GameJournal(directory, segmentBytes);
+        records = new ConcurrentHashMap<>();
+        snapshotPosition = GameSnapshot.read(directory, record -> records.put(GameCodec.idOf(record), record));
+        journal.recover(snapshotPosition, (position, record) -> records.put(GameCodec.idOf(record), record));
+        long maximumId = 0;
+        for (byte[] record : records.values()) {
+            Game game = GameCodec.decode(record);
+            gameMap.put(game.getId(), game);
+            index(game);
+            maximumId = Math.max(maximumId, game.getId());
+        }
+        nextId.set(maximumId + 1);
+
+        persistence = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-map-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            persistence.scheduleWithFixedDelay(() -> journal.sync(journal.position()),
+                    syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
     public void create(Game game) {
-        game.setId(nextId);
-        gameMap.put(nextId, game);
-        nextId++;
+        GameChanges changes = GameChanges.of(game);
+        long id = nextId.getAndIncrement();
+        game.setId(id);
+        gameMap.put(id, game);
+        index(game);
+        log(game, changes);
+        persist(game);
+        changes.markSaved(game);
+    }
+
+    @Override
+    public void update(Game game) {
+        GameChanges changes = GameChanges.of(game);
+        gameMap.put(game.getId(), game);
+        index(game);
+        log(game, changes);
+        persist(game);
+        changes.markSaved(game);
+    }
+
+    private void persist(Game game) {
+        if (journal == null) {
+            return;
+        }
+        byte[] record = GameCodec.encode(game);
+        // Before the append: a snapshot taken once the record is in the journal has it
+        records.put(game.getId(), record);
+        long position = journal.append(record);
+        if (syncPolicy == SyncPolicy.ALWAYS) {
+            journal.sync(position);
+        }
+        if (position - snapshotPosition >= snapshotBytes && snapshotting.compareAndSet(false, true)) {
+            persistence.execute(() -> {
+                try {
+                    snapshot();
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        }
     }
 
+    /** Writes the latest record of every game as a snapshot, then deletes the journal segments it replaces. */
+    public synchronized void snapshot() {
+        long position = journal.position();
+        GameSnapshot.write(directory, position, records.values());
+        journal.deleteBefore(position);
+        snapshotPosition = position;
+    }
+
+    /** Number of journal segments kept. */
+    public int journalSegments() {
+        return journal != null ? journal.segmentCount() : 0;
+    }
+
+    /** Writes a last snapshot, so the next start only reads it; if interrupted, the next start reads the journal too. */
+    @Override
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+        persistence.shutdown();
+        try {
+            persistence.awaitTermination(1, TimeUnit.MINUTES);
+            snapshot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Override
     public Game getById(long id) {
         return gameMap.get(id);
     }
 
-    public List<Game> getAll() {
-        return new ArrayList<>(gameMap.values());
+    @Override
+    public List<GameEvent> getEvents(long gameId, long after, long to) {
+        EventLog log = eventLogs.get(gameId);
+        if (log == null || after >= to) {
+            return Collections.emptyList();
+        }
+        synchronized (log) {
+            return new ArrayList<>(log.events.subMap(after, false, to, true).values());
+        }
+    }
+
+    @Override
+    public Game getSnapshot(long gameId, long version) {
+        EventLog log = eventLogs.get(gameId);
+        if (log == null) {
+            return null;
+        }
+        synchronized (log) {
+            Map.Entry<Long, byte[]> snapshot = log.snapshots.floorEntry(version);
+            return snapshot != null ? GameCodec.decode(snapshot.getValue()) : null;
+        }
+    }
+
+    /** Streams the live games, without copying them. */
+    @Override
+    public Stream<Game> getAll() {
+        return gameMap.values().stream();
+    }
+
+    @Override
+    public Stream<Game> stream(GameSearch gameSearch) {
+        return streamSummaries(gameSearch).map(summary -> gameMap.get(summary.getId())).filter(Objects::nonNull);
+    }
+
+    /**
+     * The summaries are replaced on every create and update, so listing games doesn't read the live games.
+     * The search walks the most selective index it has a criterion for (player, state) from the id it starts after,
+     * from the first game created after the time of the search, and checks the other criteria on the summaries.
+     * Games get their ids as they are created, so a page only reads about as many summaries as it returns.
+     */
+    @Override
+    public Stream<GameSummary> streamSummaries(GameSearch gameSearch) {
+        NavigableSet<Long> index;
+        if (gameSearch.getPlayer() != null) {
+            index = idsByPlayer.getOrDefault(gameSearch.getPlayer(), Collections.emptyNavigableSet());
+        } else if (gameSearch.getState() != null) {
+            index = idsByState.get(gameSearch.getState());
+        } else {
+            index = summaries.navigableKeySet();
+        }
+        if (gameSearch.getCreatedAfter() > 0) {
+            Map.Entry<Long, Long> first = firstIdsByCreated.higherEntry(gameSearch.getCreatedAfter());
+            index = first != null ? index.tailSet(first.getValue(), true) : Collections.emptyNavigableSet();
+        }
+        if (gameSearch.isNewestFirst()) {
+            index = index.descendingSet();
+        }
+        if (gameSearch.getAfterId() > 0) {
+            index = index.tailSet(gameSearch.getAfterId(), false);
+        }
+        Stream<GameSummary> games = index.stream().map(summaries::get)
+                .filter(summary -> summary != null && gameSearch.matches(summary));
+        return gameSearch.getLimit() > 0 ? games.limit(gameSearch.getLimit()) : games;
+    }
+
+    /** Games in the given state, ordered by id. */
+    public List<Game> findByState(Game.State state) {
+        return getGames(idsByState.get(state));
+    }
+
+    /** Games the given player joined, ordered by id. */
+    public List<Game> findByPlayer(String username) {
+        return getGames(idsByPlayer.getOrDefault(username, Collections.emptyNavigableSet()));
+    }
+
+    public int size() {
+        return gameMap.size();
+    }
+
+    private List<Game> getGames(Set<Long> ids) {
+        List<Game> games = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Game game = gameMap.get(id);
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
+    private void index(Game game) {
+        long id = game.getId();
+        IndexEntry entry = indexEntries.computeIfAbsent(id, key -> new IndexEntry());
+        synchronized (entry) {
+            Game.State state = game.getState();
+            if (entry.state == null) {
+                indexCreated(id, game.getCreated());
+            }
+            if (state != entry.state) {
+                if (entry.state != null) {
+                    idsByState.get(entry.state).remove(id);
+                }
+                idsByState.get(state).add(id);
+                entry.state = state;
+            }
+            List<String> playerNames = game.getPlayerNames();
+            // Players never leave a game, so only the new ones need to be indexed
+            for (int i = entry.players; i < playerNames.size(); i++) {
+                idsByPlayer.computeIfAbsent(playerNames.get(i), key -> new ConcurrentSkipListSet<>()).add(id);
+            }
+            entry.players = playerNames.size();
+            summaries.put(id, new GameSummary(id, state, playerNames, game.getCreated()));
+        }
+    }
+
+    /** Keeps firstIdsByCreated a staircase: only the games no game created later has a lower id than. */
+    private void indexCreated(long id, long created) {
+        synchronized (firstIdsByCreated) {
+            Map.Entry<Long, Long> later = firstIdsByCreated.ceilingEntry(created);
+            if (later != null && later.getValue() <= id) {
+                return;
+            }
+            firstIdsByCreated.put(created, id);
+            Map.Entry<Long, Long> earlier;
+            while ((earlier = firstIdsByCreated.lowerEntry(created)) != null && earlier.getValue() >= id) {
+                firstIdsByCreated.remove(earlier.getKey());
+            }
+        }
+    }
+
+    private void log(Game game, GameChanges changes) {
+        if (game.getState() == Game.State.FINISHED) {
+            eventLogs.remove(game.getId());
+            return;
+        }
+        EventLog log = eventLogs.computeIfAbsent(game.getId(), key -> {
+            EventLog recovered = new EventLog();
+            byte[] saved = records != null ? records.get(key) : null;
+            if (saved != null) {
+                // A game read on startup: its history starts at the version it was saved at
+                recovered.snapshots.put(changes.getSavedVersion(), saved);
+            }
+            return recovered;
+        });
+        synchronized (log) {
+            for (GameEvent event : changes.getEvents(game)) {
+                log.events.put(event.getVersion(), event);
+            }
+            if (GameRepository.isSnapshotDue(game, changes)) {
+                log.snapshots.put(game.getVersion(), GameCodec.encode(game));
+            }
+            long oldest = game.getVersion() - LOGGED_VERSIONS;
+            if (oldest > 0 && !log.events.isEmpty() && log.events.firstKey() <= oldest) {
+                log.events.headMap(oldest, true).clear();
+                // A snapshot is only replayed with the events that follow it
+                log.snapshots.headMap(oldest, false).clear();
+            }
+        }
+    }
+
+    /** The events of a game by version, and its snapshots (GameCodec) by version. */
+    private static class EventLog {
+        private final NavigableMap<Long, GameEvent> events = new TreeMap<>();
+        private final NavigableMap<Long, byte[]> snapshots = new TreeMap<>();
+    }
+
+    private static class IndexEntry {
+        private Game.State state;
+        private int players;
     }
-}
\ No newline at end of file
+}
@@ -1,46 +1,309 @@
 package tech.bts.cardgame.repository;
 
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.*;
+import com.mongodb.client.model.*;
 import org.bson.Document;
-import org.springframework.stereotype.Repository;
-import tech.bts.cardgame.model.Game;
-import tech.bts.cardgame.model.GameSearch;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import tech.bts.cardgame.model.*;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-@Repository
-public class GameRepositoryMongo {
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+
+/**
+ * Stores one document per game in the games collection, with the id of the game as _id:
+ * <pre>
+ * {_id, state, players: [name...], created, seed, round, version, deck: binary, deckSize,
+ *  slots: [{discards, picked, points, hand: binary}...]}
+ * </pre>
+ * Cards are stored as their index in the card table (one byte). The deck only shrinks from its end, so after the
+ * first save only deckSize changes until the deck is replaced. players has the names in the order of the slots.
+ * <p>
+ * Saving a game only sets the fields it reports as changed (see {@link GameChanges}), and several games are
+ * saved with one bulk write. Searches run on the compound indexes created on startup, and summaries are read with
+ * a projection of their fields.
+ * <p>
+ * The event log has a document per save in game_events, {game, version, events: binary} with the version of the
+ * first event (see GameCodec.encodeEvents), and the snapshots are {game, version, state: binary} in game_snapshots.
+ * They are written after the games, not in the same transaction: if that fails, the saved games miss their latest
+ * events until the games are saved again, which writes them with upserts, so a retry never fails on the ones written.
+ */
+public class GameRepositoryMongo implements GameRepository, AutoCloseable {
+
+    private static final Bson SUMMARY_FIELDS = Projections.include("state", "players", "created");
 
     private MongoCollection<Document> gamesCol;
+    private MongoCollection<Document> countersCol;
+    private MongoCollection<Document> eventsCol;
+    private MongoCollection<Document> snapshotsCol;
+    // Only when the repository opened it
+    private MongoClient client;
 
     public GameRepositoryMongo() {
+        this(MongoClients.create());
+    }
+
+    private GameRepositoryMongo(MongoClient client) {
+        this(client.getDatabase("cardgame"));
+        this.client = client;
+    }
 
-        MongoClient mongoClient = MongoClients.create();
-        MongoDatabase database = mongoClient.getDatabase("cardgame");
+    public GameRepositoryMongo(MongoDatabase database) {
         this.gamesCol = database.getCollection("games");
+        this.countersCol = database.getCollection("counters");
+        this.eventsCol = database.getCollection("game_events");
+        this.snapshotsCol = database.getCollection("game_snapshots");
+        // Each index serves one criterion of GameSearch and keeps the results in the order of the ids
+        gamesCol.createIndex(Indexes.ascending("state", "_id"));
+        gamesCol.createIndex(Indexes.ascending("players", "_id"));
+        gamesCol.createIndex(Indexes.ascending("created", "_id"));
+        eventsCol.createIndex(Indexes.ascending("game", "version"), new IndexOptions().unique(true));
+        snapshotsCol.createIndex(Indexes.ascending("game", "version"), new IndexOptions().unique(true));
     }
 
+    @Override
     public void create(Game game) {
-        gamesCol.insertOne(new Document().append("state", game.getState()).append("players", game.getPlayerNames()));
+        saveAll(Collections.singletonList(game));
     }
 
+    @Override
     public void update(Game game) {
+        saveAll(Collections.singletonList(game));
+    }
+
+    /** Games with id 0 get their ids from one increment of the counter; the writes of all the games go in one bulk write. */
+    @Override
+    public void saveAll(Collection<Game> games) {
+
+        // Tracked before the new games get their ids, so they are tracked as new
+        for (Game game : games) {
+            GameChanges.of(game);
+        }
+        long newGames = games.stream().filter(game -> game.getId() == 0).count();
+        long nextId = newGames > 0 ? reserveIds(newGames) : 0;
+
+        List<WriteModel<Document>> writes = new ArrayList<>(games.size());
+        for (Game game : games) {
+            int parts = GameChanges.of(game).getParts();
+            if (game.getId() == 0) {
+                game.setId(nextId++);
+                writes.add(new InsertOneModel<>(toDocument(game)));
+            } else if ((parts & GameChanges.DECK_REPLACED) != 0) {
+                writes.add(new ReplaceOneModel<>(eq("_id", game.getId()), toDocument(game), new ReplaceOptions().upsert(true)));
+            } else if (parts != 0) {
+                writes.add(new UpdateOneModel<>(eq("_id", game.getId()), changes(game, parts)));
+            }
+        }
+        if (!writes.isEmpty()) {
+            gamesCol.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        }
+        log(games);
+        for (Game game : games) {
+            GameChanges.of(game).markSaved(game);
+        }
+    }
 
+    /** Appends the events of the games and writes their snapshots that are due, after the games are written. */
+    private void log(Collection<Game> games) {
+        List<WriteModel<Document>> events = new ArrayList<>();
+        List<WriteModel<Document>> snapshots = new ArrayList<>();
+        for (Game game : games) {
+            GameChanges changes = GameChanges.of(game);
+            List<GameEvent> unsaved = changes.getEvents(game);
+            if (!unsaved.isEmpty()) {
+                long version = unsaved.get(0).getVersion();
+                Bson key = and(eq("game", game.getId()), eq("version", version));
+                events.add(new ReplaceOneModel<>(key, new Document("game", game.getId())
+                        .append("version", version)
+                        .append("events", new Binary(GameCodec.encodeEvents(unsaved))), new ReplaceOptions().upsert(true)));
+            }
+            if (GameRepository.isSnapshotDue(game, changes)) {
+                Bson key = and(eq("game", game.getId()), eq("version", game.getVersion()));
+                snapshots.add(new ReplaceOneModel<>(key, new Document("game", game.getId())
+                        .append("version", game.getVersion())
+                        .append("state", new Binary(GameCodec.encode(game))), new ReplaceOptions().upsert(true)));
+            }
+        }
+        if (!events.isEmpty()) {
+            eventsCol.bulkWrite(events, new BulkWriteOptions().ordered(false));
+        }
+        if (!snapshots.isEmpty()) {
+            snapshotsCol.bulkWrite(snapshots, new BulkWriteOptions().ordered(false));
+        }
     }
 
+    @Override
     public Game getById(long id) {
-        return null;
+        Document document = gamesCol.find(eq("_id", id)).first();
+        return document != null ? toGame(document) : null;
     }
 
-    public Collection<Game> getAll() {
-        return null;
+    @Override
+    public List<GameEvent> getEvents(long gameId, long after, long to) {
+        // From the document with the first event wanted, which may start before it when its save had several events
+        Document first = eventsCol.find(and(eq("game", gameId), lte("version", after + 1)))
+                .sort(descending("version")).projection(Projections.include("version")).first();
+        long from = first != null ? first.getLong("version") : 0;
+        List<GameEvent> events = new ArrayList<>();
+        for (Document document : eventsCol.find(and(eq("game", gameId), gte("version", from), lte("version", to))).sort(ascending("version"))) {
+            for (GameEvent event : GameCodec.decodeEvents(document.getLong("version"), document.get("events", Binary.class).getData())) {
+                if (event.getVersion() > after && event.getVersion() <= to) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
     }
 
-    public Collection<Game> find(GameSearch gameSearch) {
-        return null;
+    @Override
+    public Game getSnapshot(long gameId, long version) {
+        Document snapshot = snapshotsCol.find(and(eq("game", gameId), lte("version", version))).sort(descending("version")).first();
+        return snapshot != null ? GameCodec.decode(snapshot.get("state", Binary.class).getData()) : null;
     }
 
+    @Override
+    public Long getVersion(long id) {
+        Document document = gamesCol.find(eq("_id", id)).projection(Projections.include("version")).first();
+        return document != null ? document.getLong("version") : null;
+    }
+
+    @Override
+    public Stream<Game> getAll() {
+        return stream(new GameSearch());
+    }
+
+    @Override
+    public Stream<Game> stream(GameSearch gameSearch) {
+        return stream(query(gameSearch)).map(GameRepositoryMongo::toGame);
+    }
+
+    @Override
+    public Stream<GameSummary> streamSummaries(GameSearch gameSearch) {
+        return stream(query(gameSearch).projection(SUMMARY_FIELDS)).map(GameRepositoryMongo::toSummary);
+    }
+
+    /** Closes the client, if the repository opened it. */
+    @Override
+    public void close() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private FindIterable<Document> query(GameSearch gameSearch) {
+        return gamesCol.find(filter(gameSearch))
+                .sort(gameSearch.isNewestFirst() ? descending("_id") : ascending("_id"))
+                .limit(gameSearch.getLimit());
+    }
+
+    private static Stream<Document> stream(FindIterable<Document> documents) {
+        MongoCursor<Document> cursor = documents.iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    private Bson filter(GameSearch gameSearch) {
+        List<Bson> filters = new ArrayList<>();
+        if (gameSearch.getAfterId() > 0) {
+            filters.add(gameSearch.isNewestFirst() ? lt("_id", gameSearch.getAfterId()) : gt("_id", gameSearch.getAfterId()));
+        }
+        if (gameSearch.getState() != null) {
+            filters.add(eq("state", gameSearch.getState().name()));
+        }
+        if (gameSearch.getPlayer() != null) {
+            filters.add(eq("players", gameSearch.getPlayer()));
+        }
+        if (gameSearch.getCreatedAfter() > 0) {
+            filters.add(gt("created", gameSearch.getCreatedAfter()));
+        }
+        return filters.isEmpty() ? new Document() : and(filters);
+    }
+
+    /** $set of the fields of the parts of the game changed since it was saved. */
+    private static Document changes(Game game, int parts) {
+        Document set = new Document("version", game.getVersion());
+        if ((parts & GameChanges.STATE_CHANGED) != 0) {
+            set.append("state", game.getState().name())
+                    .append("players", game.getPlayerNames())
+                    .append("round", game.getRound());
+        }
+        if ((parts & GameChanges.DECK_CHANGED) != 0) {
+            set.append("deckSize", game.getDeckSize());
+        }
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            if (GameChanges.isPlayerChanged(parts, slot)) {
+                set.append("slots." + slot, toDocument(game.getPlayer(slot)));
+            }
+        }
+        return new Document("$set", set);
+    }
+
+    private static Document toDocument(Game game) {
+        List<Document> slots = new ArrayList<>(game.getPlayerCount());
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            slots.add(toDocument(game.getPlayer(slot)));
+        }
+        return new Document("_id", game.getId())
+                .append("state", game.getState().name())
+                .append("players", game.getPlayerNames())
+                .append("created", game.getCreated())
+                .append("seed", game.getSeed())
+                .append("round", game.getRound())
+                .append("version", game.getVersion())
+                .append("deck", new Binary(game.getDeck().getCardIndexes()))
+                .append("deckSize", game.getDeckSize())
+                .append("slots", slots);
+    }
+
+    private static Document toDocument(Player player) {
+        Hand hand = player.getHand();
+        byte[] cards = new byte[hand.handSize()];
+        for (int position = 0; position < cards.length; position++) {
+            cards[position] = (byte) hand.cardIndex(position);
+        }
+        return new Document("discards", player.getDiscardCounter())
+                .append("picked", player.getPickedCard() != null ? player.getPickedCard().getIndex() : null)
+                .append("points", player.getPoint())
+                .append("hand", new Binary(cards));
+    }
+
+    private static Game toGame(Document document) {
+        List<String> names = document.getList("players", String.class);
+        List<Document> slots = document.getList("slots", Document.class);
+        List<Player> players = new ArrayList<>(names.size());
+        for (int slot = 0; slot < names.size(); slot++) {
+            Document player = slots.get(slot);
+            byte[] cards = player.get("hand", Binary.class).getData();
+            List<Card> hand = new ArrayList<>(cards.length);
+            for (byte card : cards) {
+                hand.add(Card.of(card));
+            }
+            Integer picked = player.getInteger("picked");
+            players.add(new Player(names.get(slot), player.getInteger("discards"), picked != null ? Card.of(picked) : null,
+                    new Hand(hand), player.getInteger("points")));
+        }
+        Deck deck = new Deck(document.get("deck", Binary.class).getData(), document.getInteger("deckSize"));
+        Game game = new Game(document.getLong("_id"), deck, document.getLong("seed"), document.getLong("created"),
+                Game.State.valueOf(document.getString("state")), document.getInteger("round"), players);
+        game.setVersion(document.getLong("version"));
+        GameChanges.saved(game);
+        return game;
+    }
+
+    private static GameSummary toSummary(Document document) {
+        return new GameSummary(document.getLong("_id"), Game.State.valueOf(document.getString("state")),
+                document.getList("players", String.class), document.getLong("created"));
+    }
+
+    /** Adds count to the counter of games, incremented atomically by the server, and returns the first of the ids reserved. */
+    private long reserveIds(long count) {
+        Document counter = countersCol.findOneAndUpdate(eq("_id", "games"), Updates.inc("next", count),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+        return counter.getLong("next") - count + 1;
+    }
 }
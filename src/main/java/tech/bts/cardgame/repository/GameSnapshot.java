@@ -0,0 +1,106 @@
+package tech.bts.cardgame.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot files of the games of a journal: the latest record of every game, written when the journal was at the
+ * position in the name of the file, so only the records from that position on are needed besides it.
+ * <p>
+ * Records are written like in the journal (length, CRC32, GameCodec bytes) to a temporary file, which is synced and
+ * renamed once complete, so a snapshot file is always whole. Snapshots are read mapped, a window at a time.
+ */
+class GameSnapshot {
+
+    private static final String SUFFIX = ".snapshot";
+    private static final int HEADER_BYTES = 8;
+    private static final long WINDOW_BYTES = 1 << 30;
+
+    /** Writes the records as the snapshot at the given position of the journal, and deletes the older snapshots. */
+    static void write(Path directory, long position, Iterable<byte[]> records) {
+        Path file = directory.resolve(String.format("%020d%s", position, SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                for (byte[] record : records) {
+                    out.writeInt(record.length);
+                    out.writeInt(GameJournal.checksum(record));
+                    out.write(record);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            for (Path older : snapshotFiles(directory)) {
+                if (positionOf(older) < position) {
+                    Files.delete(older);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Gives the records of the latest snapshot to the consumer and returns its position, or 0 if there is none. */
+    static long read(Path directory, Consumer<byte[]> consumer) {
+        try {
+            List<Path> files = snapshotFiles(directory);
+            if (files.isEmpty()) {
+                return 0;
+            }
+            Path latest = files.get(files.size() - 1);
+            try (FileChannel channel = FileChannel.open(latest, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long offset = 0;
+                while (offset < size) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_BYTES, size - offset));
+                    int read = 0;
+                    while (window.remaining() >= HEADER_BYTES && window.getInt(window.position()) <= window.remaining() - HEADER_BYTES) {
+                        byte[] record = new byte[window.getInt()];
+                        int checksum = window.getInt();
+                        window.get(record);
+                        if (checksum != GameJournal.checksum(record)) {
+                            throw new IllegalStateException("Corrupt record at " + (offset + read) + " of " + latest);
+                        }
+                        consumer.accept(record);
+                        read = window.position();
+                    }
+                    if (read == 0) {
+                        throw new IllegalStateException("Incomplete record at " + offset + " of " + latest);
+                    }
+                    // The next window starts at the record cut by the end of this one
+                    offset += read;
+                }
+            }
+            return positionOf(latest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> snapshotFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(GameSnapshot::positionOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long positionOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,340 @@
+package tech.bts.cardgame.repository;
+
+import tech.bts.cardgame.metrics.MetricsSource;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the games in memory and saves their updates to another repository in the background.
+ * <p>
+ * An update is acknowledged once its state is in the journal; it then waits with the other updates, only the
+ * latest state of each game, until a flush saves them all with one saveAll. Flushes run one at a time, every
+ * flush interval or as soon as flush size games are waiting, and a failed flush is retried with the updates that
+ * came meanwhile. On startup, the games left in the journal are saved again with their events, so no acknowledged
+ * update is lost and the event log has no gaps.
+ * New games are created in the other repository right away, because they need an id. Lists and searches don't
+ * wait for a flush (see getAll), only the event log and the snapshots do.
+ */
+public class WriteBehindGameRepository implements GameRepository, MetricsSource, AutoCloseable {
+
+    private static final long MAXIMUM_RETRY_MILLIS = 30_000;
+
+    private final GameRepository store;
+    private final GameJournal journal;
+    private final boolean journalSync;
+    private final long flushIntervalMillis;
+    private final int flushSize;
+
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // Updates hold the read lock from the journal to the pending map; deleting journal segments takes the write lock
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Object flushSignal = new Object();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedGames = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile long lastFlushNanos;
+    private volatile long maximumFlushNanos;
+
+    public WriteBehindGameRepository(GameRepository store, Path journalDirectory, long journalSegmentBytes,
+                                     boolean journalSync, long flushIntervalMillis, int flushSize) {
+        this.store = store;
+        this.journal = new GameJournal(journalDirectory, journalSegmentBytes);
+        this.journalSync = journalSync;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushSize = flushSize;
+
+        List<Game> recovered = journal.recover();
+        if (!recovered.isEmpty()) {
+            for (Game game : recovered) {
+                skipSavedEvents(game, store.getVersion(game.getId()));
+                GameChanges.of(game).markAllChanged(game);
+            }
+            store.saveAll(recovered);
+        }
+        journal.deleteBefore(journal.position());
+
+        this.flusher = new Thread(this::flushLoop, "game-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void create(Game game) {
+        store.create(game);
+        games.put(game.getId(), game);
+    }
+
+    /**
+     * Each record has the events of the game since the state waiting before it, so the journal has every event the
+     * store doesn't have yet, whichever records are left of the game after a flush.
+     */
+    @Override
+    public void update(Game game) {
+        long id = game.getId();
+        Pending update = new Pending(GameChanges.copy(game));
+
+        long position;
+        journalLock.readLock().lock();
+        try {
+            games.compute(id, (key, current) -> {
+                pending.compute(key, (gameId, older) -> {
+                    Pending latest = older != null ? update.after(older) : update;
+                    // Any position inside the record keeps its segment
+                    latest.position = journal.append(latest.game) - 1;
+                    return latest;
+                });
+                return game;
+            });
+            position = update.position + 1;
+            // Only once the update is journaled and waiting: if that failed, the next update writes these changes
+            GameChanges.of(game).markSaved(game);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+        updates.increment();
+        if (pending.size() >= flushSize) {
+            synchronized (flushSignal) {
+                flushSignal.notify();
+            }
+        }
+        if (journalSync) {
+            journal.sync(position);
+        }
+    }
+
+    @Override
+    public Game getById(long id) {
+        Game game = games.get(id);
+        if (game == null) {
+            game = store.getById(id);
+            if (game != null) {
+                Game current = games.putIfAbsent(id, game);
+                game = current != null ? current : game;
+            }
+        }
+        return game;
+    }
+
+    @Override
+    public Long getVersion(long id) {
+        Game game = games.get(id);
+        return game != null ? Long.valueOf(game.getVersion()) : store.getVersion(id);
+    }
+
+    /** Flushes the waiting updates first, so the log has every event; history and replay are rare. */
+    @Override
+    public List<GameEvent> getEvents(long gameId, long after, long to) {
+        flush();
+        return store.getEvents(gameId, after, to);
+    }
+
+    @Override
+    public Game getSnapshot(long gameId, long version) {
+        flush();
+        return store.getSnapshot(gameId, version);
+    }
+
+    /**
+     * The games of the store, with the latest state of those kept here. Doesn't wait for a flush: the games that no
+     * longer match a search are left out, but those that only match since the last flush come after it.
+     */
+    @Override
+    public Stream<Game> getAll() {
+        return store.getAll().map(this::latest);
+    }
+
+    @Override
+    public Stream<Game> stream(GameSearch gameSearch) {
+        return store.stream(gameSearch).map(this::latest).filter(gameSearch::matches);
+    }
+
+    @Override
+    public Stream<GameSummary> streamSummaries(GameSearch gameSearch) {
+        return store.streamSummaries(gameSearch).map(summary -> {
+            Pending update = pending.get(summary.getId());
+            return update != null ? GameSummary.of(update.game) : summary;
+        }).filter(gameSearch::matches);
+    }
+
+    private Game latest(Game saved) {
+        Game game = games.get(saved.getId());
+        return game != null ? game : saved;
+    }
+
+    /** Saves the waiting updates now, on the calling thread. */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Pending> batch = new ArrayList<>(pending.size());
+            for (Long id : pending.keySet()) {
+                Pending update = pending.remove(id);
+                if (update != null) {
+                    batch.add(update);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Game> snapshots = new ArrayList<>(batch.size());
+            for (Pending update : batch) {
+                snapshots.add(update.game);
+            }
+
+            long start = System.nanoTime();
+            try {
+                store.saveAll(snapshots);
+            } catch (RuntimeException e) {
+                failedFlushes.increment();
+                for (Pending update : batch) {
+                    // The updates that came meanwhile are newer, but their records don't have the events of the failed ones
+                    pending.merge(update.game.getId(), update, (newer, failed) -> {
+                        newer.after(failed);
+                        newer.position = Math.min(newer.position, failed.position);
+                        return newer;
+                    });
+                }
+                throw e;
+            }
+            long nanos = System.nanoTime() - start;
+            flushes.increment();
+            flushedGames.add(batch.size());
+            flushNanos.add(nanos);
+            lastFlushNanos = nanos;
+            maximumFlushNanos = Math.max(maximumFlushNanos, nanos);
+
+            for (Game snapshot : snapshots) {
+                // Finished games are not played anymore, they are read from the store from now on
+                games.computeIfPresent(snapshot.getId(), (id, game) ->
+                        game.getState() == Game.State.FINISHED && !pending.containsKey(id) ? null : game);
+            }
+            deleteFlushedJournal();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** Number of games with updates waiting to be flushed. */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    private void deleteFlushedJournal() {
+        journalLock.writeLock().lock();
+        try {
+            long position = journal.position();
+            for (Pending update : pending.values()) {
+                position = Math.min(position, update.position);
+            }
+            journal.deleteBefore(position);
+        } finally {
+            journalLock.writeLock().unlock();
+        }
+    }
+
+    private void flushLoop() {
+        long retryMillis = flushIntervalMillis;
+        while (!closed) {
+            try {
+                synchronized (flushSignal) {
+                    if (pending.size() < flushSize) {
+                        flushSignal.wait(retryMillis);
+                    }
+                }
+                flush();
+                retryMillis = flushIntervalMillis;
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                retryMillis = Math.min(retryMillis * 2, MAXIMUM_RETRY_MILLIS);
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "writeBehind";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        long flushCount = flushes.sum();
+        metrics.put("queueDepth", pending.size());
+        metrics.put("updates", updates.sum());
+        metrics.put("flushes", flushCount);
+        metrics.put("flushedGames", flushedGames.sum());
+        metrics.put("failedFlushes", failedFlushes.sum());
+        metrics.put("lastFlushMillis", TimeUnit.NANOSECONDS.toMillis(lastFlushNanos));
+        metrics.put("maximumFlushMillis", TimeUnit.NANOSECONDS.toMillis(maximumFlushNanos));
+        metrics.put("averageFlushMillis", flushCount == 0 ? 0 : (double) flushNanos.sum() / flushCount / 1_000_000);
+        metrics.put("journalSegments", journal.segmentCount());
+        metrics.put("journalSyncs", journal.syncCount());
+        return metrics;
+    }
+
+    /** Stops the background flushes and flushes the waiting updates; if that fails they stay in the journal. */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join();
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /** Drops the events of a recovered game the store saved before it stopped; saving them again would repeat them. */
+    private static void skipSavedEvents(Game game, Long storedVersion) {
+        GameChanges changes = GameChanges.of(game);
+        if (storedVersion == null || storedVersion <= changes.getSavedVersion()) {
+            return;
+        }
+        List<GameEvent> unsaved = new ArrayList<>();
+        for (GameEvent event : changes.getEvents(game)) {
+            if (event.getVersion() > storedVersion) {
+                unsaved.add(event);
+            }
+        }
+        changes.setEvents(game, Math.min(storedVersion, game.getVersion()), unsaved);
+    }
+
+    private static class Pending {
+
+        private final Game game;
+        // Position in the journal record with this state
+        private long position;
+
+        Pending(Game game) {
+            this.game = game;
+        }
+
+        /** This update, also writing the changes of an older one that was not saved. */
+        Pending after(Pending older) {
+            GameChanges.of(game).mergeOlder(GameChanges.of(older.game));
+            return this;
+        }
+    }
+}
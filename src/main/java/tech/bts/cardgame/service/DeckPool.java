@@ -0,0 +1,63 @@
+package tech.bts.cardgame.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tech.bts.cardgame.model.Deck;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Keeps a number of generated and shuffled decks ready, so creating a game doesn't have to prepare one.
+ * A background thread refills the pool; when it is empty, the deck is prepared by the caller.
+ */
+@Component
+public class DeckPool {
+
+    private final BlockingQueue<Deck> decks;
+    private final Thread refiller;
+
+    @Autowired
+    public DeckPool(@Value("${cardgame.deck-pool.size:1024}") int size) {
+        if (size > 0) {
+            this.decks = new ArrayBlockingQueue<>(size);
+            this.refiller = new Thread(this::refill, "deck-pool-refiller");
+            this.refiller.setDaemon(true);
+            this.refiller.start();
+        } else {
+            this.decks = null;
+            this.refiller = null;
+        }
+    }
+
+    public Deck take() {
+        Deck deck = decks != null ? decks.poll() : null;
+        if (deck == null) {
+            deck = Deck.shuffled(Deck.nextSeed());
+        }
+        return deck;
+    }
+
+    public int size() {
+        return decks != null ? decks.size() : 0;
+    }
+
+    private void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                decks.put(Deck.shuffled(Deck.nextSeed()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (refiller != null) {
+            refiller.interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package tech.bts.cardgame.service;
+
+import com.github.benmanes.caffeine.cache.*;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tech.bts.cardgame.metrics.MetricsSource;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepository;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live games kept in memory between actions, loaded from the repository on a miss.
+ * <p>
+ * The cache is bounded by the number of games and evicts by frequency of use (Window TinyLFU), so a burst of games
+ * read once doesn't push out the games being played. Games that are open or playing expire when they haven't been
+ * used for the active TTL, finished games after the (shorter) finished TTL.
+ * GameService puts a game back after each save, and invalidates it when the save fails.
+ * <p>
+ * Concurrent misses of the same game share one load from the repository (see {@link SingleFlight}), which puts the
+ * game in the cache before the waiters get it, so they all get the same live game.
+ */
+@Component
+public class GameCache implements MetricsSource {
+
+    private final Cache<Long, Game> games;
+    private final GameRepository gameRepo;
+    private final SingleFlight<Long, Game> loads;
+
+    @Autowired
+    public GameCache(GameRepository gameRepo,
+                     @Value("${cardgame.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${cardgame.cache.active-ttl-seconds:600}") long activeTtlSeconds,
+                     @Value("${cardgame.cache.finished-ttl-seconds:60}") long finishedTtlSeconds,
+                     @Value("${cardgame.cache.load-timeout-ms:5000}") long loadTimeoutMillis) {
+        this(gameRepo, maximumSize, Duration.ofSeconds(activeTtlSeconds), Duration.ofSeconds(finishedTtlSeconds),
+                Duration.ofMillis(loadTimeoutMillis), Ticker.systemTicker());
+    }
+
+    public GameCache(GameRepository gameRepo, long maximumSize, Duration activeTtl, Duration finishedTtl,
+                     Duration loadTimeout, Ticker ticker) {
+        this.gameRepo = gameRepo;
+        this.loads = new SingleFlight<>(loadTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        this.games = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new StateExpiry(activeTtl.toNanos(), finishedTtl.toNanos()))
+                .ticker(ticker)
+                // Evictions run on the threads using the cache, not on the common pool
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /** The game with the given id, or null if there is none. */
+    public Game get(long gameId) {
+        Game game = games.getIfPresent(gameId);
+        return game != null ? game : loads.load(gameId, this::load);
+    }
+
+    /** The game with the given id if it is cached, without loading it. */
+    public Game getIfPresent(long gameId) {
+        return games.getIfPresent(gameId);
+    }
+
+    private Game load(long gameId) {
+        Game game = gameRepo.getById(gameId);
+        if (game == null) {
+            return null;
+        }
+        // A game put by a save meanwhile is newer than the loaded one
+        Game cached = games.asMap().putIfAbsent(gameId, game);
+        return cached != null ? cached : game;
+    }
+
+    /** Caches a game just saved, restarting its expiry for its current state. */
+    public void put(Game game) {
+        games.put(game.getId(), game);
+    }
+
+    /** Drops the game, so it is loaded from the repository the next time. */
+    public void invalidate(long gameId) {
+        games.invalidate(gameId);
+    }
+
+    public long size() {
+        games.cleanUp();
+        return games.estimatedSize();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "gameCache";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        CacheStats stats = games.stats();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("size", games.estimatedSize());
+        metrics.put("hits", stats.hitCount());
+        metrics.put("misses", stats.missCount());
+        metrics.put("hitRate", stats.hitRate());
+        metrics.put("evictions", stats.evictionCount());
+        metrics.put("loads", loads.getLoads());
+        metrics.put("coalescedLoads", loads.getCoalesced());
+        metrics.put("loadTimeouts", loads.getTimeouts());
+        return metrics;
+    }
+
+    private static class StateExpiry implements Expiry<Long, Game> {
+
+        private final long activeNanos;
+        private final long finishedNanos;
+
+        StateExpiry(long activeNanos, long finishedNanos) {
+            this.activeNanos = activeNanos;
+            this.finishedNanos = finishedNanos;
+        }
+
+        private long ttl(Game game) {
+            return game.getState() == Game.State.FINISHED ? finishedNanos : activeNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Long gameId, Game game, long currentTime) {
+            return ttl(game);
+        }
+
+        @Override
+        public long expireAfterUpdate(Long gameId, Game game, long currentTime, long currentDuration) {
+            return ttl(game);
+        }
+
+        @Override
+        public long expireAfterRead(Long gameId, Game game, long currentTime, long currentDuration) {
+            return ttl(game);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package tech.bts.cardgame.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import tech.bts.cardgame.metrics.MetricsSource;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameChanges;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes the changes of the games to the clients subscribed to them, as server-sent events.
+ * <p>
+ * The subscribers of a game get a "game" event after each save of the game, with the version it goes from and to
+ * and only the parts that changed (state and round, size of the deck, the players that changed). The subscribers of
+ * the lobby get a "summary" event with the GameSummary of each created game and of each game whose state or players
+ * changed.
+ * <p>
+ * Each event is encoded once and the same bytes are written to every subscriber. Subscribers are written to by a
+ * few sender threads, without blocking; while a subscriber is slow, a newer event of a game replaces the one of the
+ * same game still waiting for it (a client seeing a "from" that isn't its version loads the game again). A subscriber
+ * with too many games waiting, or that hasn't been able to take a write for write-timeout-ms when an event comes,
+ * is disconnected.
+ */
+@Component
+public class GameEvents implements MetricsSource {
+
+    private final ObjectMapper objectMapper;
+    private final long timeoutMillis;
+    private final int maximumPending;
+    private final long writeTimeoutNanos;
+    private final ExecutorService senders;
+    private final Map<Long, Set<Subscriber>> gameSubscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> lobbySubscribers = new CopyOnWriteArraySet<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    @Autowired
+    public GameEvents(ObjectMapper objectMapper,
+                      @Value("${cardgame.events.timeout-ms:1800000}") long timeoutMillis,
+                      @Value("${cardgame.events.maximum-pending:64}") int maximumPending,
+                      @Value("${cardgame.events.write-timeout-ms:10000}") long writeTimeoutMillis,
+                      @Value("${cardgame.events.sender-threads:2}") int senderThreads) {
+        this.objectMapper = objectMapper;
+        this.timeoutMillis = timeoutMillis;
+        this.maximumPending = maximumPending;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.senders = Executors.newFixedThreadPool(senderThreads, new SenderThreadFactory());
+    }
+
+    /** Starts the response as asynchronous and writes the events of the game to it, see GameEvents. */
+    public void subscribe(long gameId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Subscriber subscriber = new Subscriber(request, response);
+        gameSubscribers.compute(gameId, (id, subscribers) -> {
+            Set<Subscriber> set = subscribers != null ? subscribers : new CopyOnWriteArraySet<>();
+            set.add(subscriber);
+            return set;
+        });
+        subscriber.open(() -> gameSubscribers.computeIfPresent(gameId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        }));
+    }
+
+    public void subscribeToLobby(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Subscriber subscriber = new Subscriber(request, response);
+        lobbySubscribers.add(subscriber);
+        subscriber.open(() -> lobbySubscribers.remove(subscriber));
+    }
+
+    /** Called after a game is saved, with the parts it changed (see GameChanges.getParts()) and its version before them. */
+    public void changed(Game game, int changes, long fromVersion) {
+        Set<Subscriber> subscribers = gameSubscribers.get(game.getId());
+        if (subscribers != null && !subscribers.isEmpty()) {
+            publish(subscribers, new Event(game.getId(), "game", game.getVersion(), encode(delta(game, changes, fromVersion))));
+        }
+        if ((changes & GameChanges.STATE_CHANGED) != 0) {
+            summaryChanged(game);
+        }
+    }
+
+    public void created(Game game) {
+        summaryChanged(game);
+    }
+
+    private void summaryChanged(Game game) {
+        if (!lobbySubscribers.isEmpty()) {
+            publish(lobbySubscribers, new Event(game.getId(), "summary", game.getVersion(), encode(GameSummary.of(game))));
+        }
+    }
+
+    private void publish(Set<Subscriber> subscribers, Event event) {
+        published.increment();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private ObjectNode delta(Game game, int changes, long fromVersion) {
+        ObjectNode delta = objectMapper.createObjectNode();
+        delta.put("id", game.getId());
+        delta.put("from", fromVersion);
+        delta.put("version", game.getVersion());
+        if ((changes & GameChanges.STATE_CHANGED) != 0) {
+            delta.put("state", game.getState().name());
+            delta.put("round", game.getRound());
+        }
+        if ((changes & GameChanges.DECK_CHANGED) != 0) {
+            delta.put("deckSize", game.getDeckSize());
+        }
+        ArrayNode players = null;
+        for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+            if (!GameChanges.isPlayerChanged(changes, slot)) {
+                continue;
+            }
+            if (players == null) {
+                players = delta.putArray("players");
+            }
+            Player player = game.getPlayer(slot);
+            players.addObject()
+                    .put("slot", slot)
+                    .put("name", player.getName())
+                    .put("handSize", player.getHand().handSize())
+                    .put("picked", player.getPickedCard() != null)
+                    .put("discards", player.getDiscardCounter())
+                    .put("points", player.getPoint());
+        }
+        return delta;
+    }
+
+    private byte[] encode(Object data) {
+        try {
+            return objectMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "events";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("gameSubscribers", gameSubscribers.values().stream().mapToInt(Set::size).sum());
+        metrics.put("lobbySubscribers", lobbySubscribers.size());
+        metrics.put("published", published.sum());
+        metrics.put("sent", sent.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("timedOut", timedOut.sum());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    /** An event encoded once as a whole server-sent event, written as is to every subscriber. */
+    private static class Event {
+
+        private final long gameId;
+        private final byte[] frame;
+
+        Event(long gameId, String name, long version, byte[] json) {
+            this.gameId = gameId;
+            byte[] header = ("event:" + name + "\nid:" + version + "\ndata:").getBytes(StandardCharsets.UTF_8);
+            this.frame = Arrays.copyOf(header, header.length + json.length + 2);
+            System.arraycopy(json, 0, frame, header.length, json.length);
+            frame[frame.length - 2] = '\n';
+            frame[frame.length - 1] = '\n';
+        }
+    }
+
+    /**
+     * The asynchronous response of a subscriber and the events waiting for it, at most one per game.
+     * It is only written while it is ready, by one thread at a time: a sender, or the container when it calls
+     * onWritePossible after the response stopped being ready. So a client that stops reading holds no thread.
+     */
+    private class Subscriber implements Runnable, WriteListener, AsyncListener {
+
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final LinkedHashMap<Long, Event> pending = new LinkedHashMap<>();
+        private Runnable unsubscribe;
+        private boolean scheduled;
+        private boolean unflushed = true;
+        private boolean stalled;
+        private long stalledSince;
+        private boolean closed;
+
+        Subscriber(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+            this.async = request.startAsync(request, response);
+            this.async.setTimeout(timeoutMillis);
+            this.out = response.getOutputStream();
+        }
+
+        void open(Runnable unsubscribe) {
+            this.unsubscribe = unsubscribe;
+            async.addListener(this);
+            out.setWriteListener(this);
+        }
+
+        void offer(Event event) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pending.put(event.gameId, event) != null) {
+                    coalesced.increment();
+                }
+                if (stalled && System.nanoTime() - stalledSince > writeTimeoutNanos) {
+                    timedOut.increment();
+                } else if (pending.size() > maximumPending) {
+                    dropped.increment();
+                } else {
+                    if (!scheduled && !stalled) {
+                        scheduled = true;
+                        senders.execute(this);
+                    }
+                    return;
+                }
+            }
+            // Completing can wait for a write of the response, so it's left to a sender
+            close();
+            senders.execute(this::complete);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Event event = null;
+                    synchronized (this) {
+                        if (closed) {
+                            scheduled = false;
+                            return;
+                        }
+                        if (!out.isReady()) {
+                            // The container calls onWritePossible once it is ready again
+                            scheduled = false;
+                            stalled = true;
+                            stalledSince = System.nanoTime();
+                            return;
+                        }
+                        Iterator<Event> events = pending.values().iterator();
+                        if (events.hasNext()) {
+                            event = events.next();
+                            events.remove();
+                            unflushed = true;
+                        } else if (unflushed) {
+                            unflushed = false;
+                        } else {
+                            scheduled = false;
+                            return;
+                        }
+                    }
+                    if (event != null) {
+                        out.write(event.frame);
+                        sent.increment();
+                    } else {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+                complete();
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            synchronized (this) {
+                stalled = false;
+                if (closed || scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            run();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+            complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+            complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+            complete();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            unsubscribe.run();
+        }
+
+        private void complete() {
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // Already completed
+            }
+        }
+    }
+
+    private static class SenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "event-sender-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
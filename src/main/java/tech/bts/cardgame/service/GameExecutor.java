@@ -0,0 +1,193 @@
+package tech.bts.cardgame.service;
+
+import tech.bts.cardgame.controller.errors.GameNotExistsException;
+import tech.bts.cardgame.model.Game;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Runs the actions on each game one at a time, without a global lock.
+ * <p>
+ * Every game with pending actions has a mailbox. A mailbox is run by at most one worker of the shared pool at a time,
+ * so the actions on a game never overlap while different games are played in parallel. The worker loads the game once,
+ * applies a batch of the queued actions, saves the game once and then completes the actions.
+ */
+public class GameExecutor {
+
+    public interface Action<T> {
+        T apply(Game game);
+    }
+
+    private final ExecutorService workers;
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes;
+    private final LongFunction<Game> loader;
+    private final Consumer<Game> saver;
+    private final int batchSize;
+
+    public GameExecutor(int threads, int batchSize, LongFunction<Game> loader, Consumer<Game> saver) {
+        this.workers = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.loader = loader;
+        this.saver = saver;
+        this.batchSize = batchSize;
+    }
+
+    public <T> CompletableFuture<T> submit(long gameId, Action<T> action) {
+        Task<T> task = new Task<>(action);
+        Mailbox mailbox = mailboxes.compute(gameId, (id, current) -> {
+            Mailbox m = current != null ? current : new Mailbox(id);
+            m.tasks.add(task);
+            return m;
+        });
+        mailbox.schedule();
+        return task.future;
+    }
+
+    /** Submits the action and waits for it, throwing the exception of the action if it fails. */
+    public <T> T execute(long gameId, Action<T> action) {
+        try {
+            return submit(gameId, action).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /** Number of games with pending or running actions. */
+    public int activeGames() {
+        return mailboxes.size();
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private class Mailbox implements Runnable {
+
+        private final long gameId;
+        private final Queue<Task<?>> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(long gameId) {
+            this.gameId = gameId;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                } else {
+                    // Submitting also goes through the map, so no action can be added to a removed mailbox
+                    mailboxes.computeIfPresent(gameId, (id, m) -> m == this && tasks.isEmpty() && !scheduled.get() ? null : m);
+                }
+            }
+        }
+
+        private void drain() {
+            Task<?>[] batch = new Task<?>[batchSize];
+            int size = 0;
+            Task<?> task;
+            while (size < batchSize && (task = tasks.poll()) != null) {
+                batch[size++] = task;
+            }
+            if (size == 0) {
+                return;
+            }
+
+            Game game;
+            try {
+                game = loader.apply(gameId);
+                if (game == null) {
+                    throw new GameNotExistsException();
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < size; i++) {
+                    batch[i].future.completeExceptionally(e);
+                }
+                return;
+            }
+
+            boolean applied = false;
+            for (int i = 0; i < size; i++) {
+                applied |= batch[i].apply(game);
+            }
+            if (applied) {
+                try {
+                    saver.accept(game);
+                } catch (RuntimeException e) {
+                    for (int i = 0; i < size; i++) {
+                        batch[i].error = batch[i].error != null ? batch[i].error : e;
+                    }
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                batch[i].complete();
+            }
+        }
+    }
+
+    private static class Task<T> {
+
+        private final Action<T> action;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private RuntimeException error;
+
+        Task(Action<T> action) {
+            this.action = action;
+        }
+
+        boolean apply(Game game) {
+            try {
+                result = action.apply(game);
+                return true;
+            } catch (RuntimeException e) {
+                error = e;
+                return false;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "game-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
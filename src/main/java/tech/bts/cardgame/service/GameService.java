@@ -1,57 +1,186 @@
 package tech.bts.cardgame.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import tech.bts.cardgame.model.Card;
 import tech.bts.cardgame.model.Deck;
 import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
 import tech.bts.cardgame.model.GameUser;
+import tech.bts.cardgame.repository.GameChanges;
 import tech.bts.cardgame.repository.GameRepository;
-import tech.bts.cardgame.repository.GameRepositoryJdbc;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Service
 public class GameService {
 
-    private GameRepositoryJdbc gameRepo;
-    //private GameRepository gameRepo;
+    private GameRepository gameRepo;
+    private DeckPool deckPool;
+    private GameCache gameCache;
+    private GameEvents gameEvents;
+    private GameExecutor gameExecutor;
+    private TurnTimeouts turnTimeouts;
+    // Changes of the lists of games in this process; with the start time, the version of the lists
+    private final AtomicLong listChanges = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
 
     @Autowired
-    public GameService(GameRepositoryJdbc gameRepo) {
+    public GameService(GameRepository gameRepo, DeckPool deckPool, GameCache gameCache, GameEvents gameEvents,
+                       TurnTimeouts turnTimeouts,
+                       @Value("${cardgame.executor.threads:0}") int threads,
+                       @Value("${cardgame.executor.batch-size:32}") int batchSize) {
         this.gameRepo = gameRepo;
+        this.deckPool = deckPool;
+        this.gameCache = gameCache;
+        this.gameEvents = gameEvents;
+        this.gameExecutor = new GameExecutor(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                batchSize, gameCache::get, this::save);
+        this.turnTimeouts = turnTimeouts;
+        turnTimeouts.start(gameExecutor);
+    }
+
+    /** Arms the deadlines of the games left open or being played by the previous run (see TurnTimeouts). */
+    @PostConstruct
+    public void resumeTimeouts() {
+        for (Game.State state : new Game.State[]{Game.State.OPEN, Game.State.PLAYING}) {
+            try (Stream<GameSummary> games = gameRepo.streamSummaries(new GameSearch().setState(state))) {
+                games.forEach(turnTimeouts::resumed);
+            }
+        }
     }
 
     public Game createGame() {
+        return create(new Game(deckPool.take()));
+    }
+
+    /** Creates a game whose deck is shuffled with the given seed, e.g. to replay a previous match. */
+    public Game createGame(long seed) {
+        return create(new Game(Deck.shuffled(seed)));
+    }
+
+    /** Creates a game the given players have already joined, so nobody else can take their seats before they do. */
+    public Game createGame(List<String> usernames) {
+        Game game = new Game(deckPool.take());
+        // Tracked before the joins, so the event log has them
+        GameChanges.of(game);
+        for (String username : usernames) {
+            game.join(username);
+        }
+        return create(game);
+    }
 
-        Deck deck = new Deck();
-        deck.generate();
-        deck.shuffle();
+    private Game create(Game game) {
 
-        Game game = new Game(deck);
-        gameRepo.createOrUpdate(game);
+        gameRepo.create(game);
+        gameCache.put(game);
+        listChanges.incrementAndGet();
+        gameEvents.created(game);
+        turnTimeouts.created(game);
 
         return game;
     }
 
     public void joinGame(GameUser gameUser){
 
-        Game game = gameRepo.getById(gameUser.getGameId());
-        game.join(gameUser.getUsername());
-        gameRepo.createOrUpdate(game);
+        gameExecutor.execute(gameUser.getGameId(), game -> game.join(gameUser.getUsername()));
     }
 
     public Card pickCard(GameUser gameUser){
 
-        Game game = gameRepo.getById(gameUser.getGameId());
-        return game.pickCard(gameUser.getUsername());
+        return gameExecutor.execute(gameUser.getGameId(), game -> game.pickCard(gameUser.getUsername()));
     }
 
-    public List<Game> getGames(){
-        return gameRepo.getAll();
+    public void keep(GameUser gameUser){
+
+        gameExecutor.execute(gameUser.getGameId(), game -> {
+            game.keep(gameUser.getUsername());
+            return null;
+        });
+    }
+
+    public void discard(GameUser gameUser){
+
+        gameExecutor.execute(gameUser.getGameId(), game -> {
+            game.discard(gameUser.getUsername());
+            return null;
+        });
     }
 
+    /** A page of the summaries of the games matching the search. */
+    public List<GameSummary> getGameSummaries(GameSearch gameSearch){
+        return gameRepo.findSummaries(gameSearch);
+    }
+
+    /** Streams the summaries of the games matching the search as they are read; close the stream when done. */
+    public Stream<GameSummary> streamGameSummaries(GameSearch gameSearch){
+        return gameRepo.streamSummaries(gameSearch);
+    }
+
+    /**
+     * A copy of the game taken on its executor, so it can be serialized while the game is played;
+     * throws GameNotExistsException if there is none.
+     */
     public Game getGameById(long gameId){
-        return gameRepo.getById(gameId);
+        return gameExecutor.execute(gameId, Game::copy);
+    }
+
+    /** The events of the game, oldest first (see GameEvent). */
+    public List<GameEvent> getGameHistory(long gameId){
+        return gameRepo.getEvents(gameId, 0, Long.MAX_VALUE);
+    }
+
+    /** The game as it was at the given version, rebuilt from its event log; null if it can't be. */
+    public Game getGameAt(long gameId, long version){
+        return gameRepo.replay(gameId, version);
+    }
+
+    /** Version of the game (see Game.getVersion()), without loading it when it isn't cached; null if there is none. */
+    public Long getGameVersion(long gameId){
+        Game game = gameCache.getIfPresent(gameId);
+        return game != null ? Long.valueOf(game.getVersion()) : gameRepo.getVersion(gameId);
+    }
+
+    /** Changes whenever a game is created or the state or players of a game change, i.e. whenever the lists of games may change. */
+    public String getGamesVersion(){
+        return startedAt + "." + listChanges.get();
+    }
+
+    /**
+     * Saves a game after its actions; if that fails, the cached game may be ahead of the saved one, so it is dropped.
+     * What changed is taken before the repository saves it, for the events and the deadlines.
+     */
+    private void save(Game game) {
+        GameChanges gameChanges = GameChanges.of(game);
+        int changes = gameChanges.getParts();
+        if (changes == 0) {
+            // Only read, e.g. copied by getGameById
+            return;
+        }
+        long fromVersion = gameChanges.getSavedVersion();
+        try {
+            gameRepo.update(game);
+            gameCache.put(game);
+            if ((changes & GameChanges.STATE_CHANGED) != 0) {
+                listChanges.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            gameCache.invalidate(game.getId());
+            throw e;
+        }
+        gameEvents.changed(game, changes, fromVersion);
+        turnTimeouts.changed(game, changes);
+    }
+
+    @PreDestroy
+    public void close() {
+        gameExecutor.shutdown();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package tech.bts.cardgame.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tech.bts.cardgame.exception.UsernameTooLongException;
+import tech.bts.cardgame.metrics.MetricsSource;
+import tech.bts.cardgame.model.Game;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Puts the players who ask for a game into new games, MAXIMUM_PLAYER_NUM at a time, without a global lock.
+ * <p>
+ * A player takes a seat at the current table with one atomic increment; whoever takes the last seat replaces the
+ * table with a new one, and a player finding the table full helps to replace it and tries the next one. The player
+ * who fills the table last has the game created with all its players in it, so it is published already full and
+ * nobody joining by its id can take their seats. A player is queued at most once: asking again while waiting gets
+ * the same future.
+ * <p>
+ * Open games created by others aren't filled from the queue: a matched pair never waits for them.
+ */
+@Service
+public class MatchmakingService implements MetricsSource {
+
+    private final GameService gameService;
+    private final ExecutorService creators;
+    private final AtomicReference<Table> table = new AtomicReference<>(new Table());
+    private final ConcurrentHashMap<String, Ticket> waiting = new ConcurrentHashMap<>();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maximumWaitNanos = new LongAccumulator(Long::max, 0);
+
+    @Autowired
+    public MatchmakingService(GameService gameService, @Value("${cardgame.matchmaking.threads:2}") int threads) {
+        this.gameService = gameService;
+        this.creators = Executors.newFixedThreadPool(threads, new CreatorThreadFactory());
+    }
+
+    /** Completes with the id of the game of the player once the game is full and the player has joined it. */
+    public CompletableFuture<Long> enqueue(String username) {
+        if (username.length() > Game.MAXIMUM_NAME_LENGTH) {
+            // Checked before the player is paired, so it doesn't fail the game of the other players
+            throw new UsernameTooLongException();
+        }
+        Ticket ticket = new Ticket(username);
+        Ticket current = waiting.putIfAbsent(username, ticket);
+        if (current != null) {
+            return current.gameId;
+        }
+        queued.increment();
+        seat(ticket);
+        return ticket.gameId;
+    }
+
+    private void seat(Ticket ticket) {
+        while (true) {
+            Table current = table.get();
+            int seat = current.taken.getAndIncrement();
+            if (seat >= Game.MAXIMUM_PLAYER_NUM) {
+                table.compareAndSet(current, new Table());
+                continue;
+            }
+            if (seat == Game.MAXIMUM_PLAYER_NUM - 1) {
+                table.compareAndSet(current, new Table());
+            }
+            current.seats.set(seat, ticket);
+            // The seats may be filled in another order than taken: the last one filled has seen them all
+            if (current.filled.incrementAndGet() == Game.MAXIMUM_PLAYER_NUM) {
+                creators.execute(() -> start(current));
+            }
+            return;
+        }
+    }
+
+    private void start(Table full) {
+        List<String> usernames = new ArrayList<>(Game.MAXIMUM_PLAYER_NUM);
+        for (int seat = 0; seat < Game.MAXIMUM_PLAYER_NUM; seat++) {
+            usernames.add(full.seats.get(seat).username);
+        }
+        Long gameId = null;
+        RuntimeException error = null;
+        try {
+            gameId = gameService.createGame(usernames).getId();
+            games.increment();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        for (int seat = 0; seat < Game.MAXIMUM_PLAYER_NUM; seat++) {
+            finish(full.seats.get(seat), gameId, error);
+        }
+    }
+
+    private void finish(Ticket ticket, Long gameId, Throwable error) {
+        waiting.remove(ticket.username, ticket);
+        if (error != null) {
+            ticket.gameId.completeExceptionally(error);
+            return;
+        }
+        long waitNanos = System.nanoTime() - ticket.queuedAt;
+        matched.increment();
+        totalWaitNanos.add(waitNanos);
+        maximumWaitNanos.accumulate(waitNanos);
+        ticket.gameId.complete(gameId);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "matchmaking";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        long players = matched.sum();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("waiting", waiting.size());
+        metrics.put("queued", queued.sum());
+        metrics.put("matched", players);
+        metrics.put("games", games.sum());
+        metrics.put("averageWaitMillis", players > 0 ? totalWaitNanos.sum() / players / 1_000_000.0 : 0);
+        metrics.put("maximumWaitMillis", maximumWaitNanos.get() / 1_000_000.0);
+        return metrics;
+    }
+
+    @PreDestroy
+    public void close() {
+        creators.shutdown();
+    }
+
+    private static class Table {
+
+        private final AtomicInteger taken = new AtomicInteger();
+        private final AtomicInteger filled = new AtomicInteger();
+        private final AtomicReferenceArray<Ticket> seats = new AtomicReferenceArray<>(Game.MAXIMUM_PLAYER_NUM);
+    }
+
+    private static class Ticket {
+
+        private final String username;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Long> gameId = new CompletableFuture<>();
+
+        Ticket(String username) {
+            this.username = username;
+        }
+    }
+
+    private static class CreatorThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "matchmaking-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
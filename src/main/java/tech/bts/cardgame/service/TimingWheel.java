@@ -0,0 +1,219 @@
+package tech.bts.cardgame.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay, to the tick, with O(1) scheduling and cancelling however many timeouts are armed.
+ * <p>
+ * A hierarchical timing wheel: the first wheel has a bucket for each of the next 64 ticks, the second one a bucket for
+ * each of the next 64 turns of the first, and so on. A timeout is linked into the bucket its deadline falls in, and
+ * unlinked to cancel it. When a wheel completes a turn, the next bucket of the wheel above is moved down (cascaded), so
+ * each timeout is moved at most once per wheel. Deadlines beyond the last wheel wait in it and are placed again.
+ * <p>
+ * One thread advances the wheels: it sleeps while no timeout is armed and otherwise wakes up once per tick, catching
+ * up on the ticks it missed. Tasks run on that thread, so they must be short, e.g. hand the work to an executor.
+ */
+public class TimingWheel implements AutoCloseable {
+
+    /** A scheduled task, until it runs or is cancelled. */
+    public static final class Timeout {
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private long deadline;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /** Returns false if the task already ran or was cancelled. */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEELS = 4;
+    // Ticks the wheels cover: about 19 days with 100 ms ticks
+    private static final long SPAN = 1L << WHEEL_BITS * WHEELS;
+
+    private final long tickNanos;
+    private final long startNanos;
+    // Each bucket is a circular list around a sentinel
+    private final Timeout[][] buckets = new Timeout[WHEELS][WHEEL_SIZE];
+    private final Thread thread;
+    private final List<Timeout> due = new ArrayList<>();
+    // Last tick processed
+    private long tick;
+    private int size;
+    private long expired;
+    private long wakeUps;
+    private boolean closed;
+
+    public TimingWheel(String name, long tickMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = System.nanoTime();
+        for (Timeout[] wheel : buckets) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                Timeout sentinel = new Timeout(this, null);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[i] = sentinel;
+            }
+        }
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Runs the task once the delay is over, at the first tick after it. */
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        Timeout timeout = new Timeout(this, task);
+        long now = System.nanoTime() - startNanos;
+        if (size == 0) {
+            // Nothing to cascade: the wheels can jump to the current tick
+            tick = Math.max(tick, now / tickNanos);
+        }
+        long elapsed = now + unit.toNanos(delay);
+        timeout.deadline = Math.max((elapsed + tickNanos - 1) / tickNanos, tick + 1);
+        add(timeout);
+        if (size++ == 0) {
+            // The thread sleeps while nothing is armed
+            notify();
+        }
+        return timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /** Number of timeouts armed. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Number of tasks run. */
+    public synchronized long expiredCount() {
+        return expired;
+    }
+
+    /** Number of times the thread woke up to advance the wheels. */
+    public synchronized long wakeUpCount() {
+        return wakeUps;
+    }
+
+    private void add(Timeout timeout) {
+        long delay = timeout.deadline - tick;
+        int wheel = 0;
+        while (wheel < WHEELS - 1 && delay >= 1L << WHEEL_BITS * (wheel + 1)) {
+            wheel++;
+        }
+        // Beyond the last wheel: in its bucket before the current one, to be placed again when it is cascaded
+        long at = delay < SPAN ? timeout.deadline : tick + SPAN - 1;
+        Timeout sentinel = buckets[wheel][(int) (at >>> WHEEL_BITS * wheel) & WHEEL_SIZE - 1];
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    private static void unlink(Timeout timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+
+    /** Moves to the next tick and collects the timeouts due then. */
+    private void advance() {
+        tick++;
+        // When a wheel completes a turn, the next bucket of the wheel above comes down, and so on up
+        for (int wheel = 1; wheel < WHEELS && (tick & (1L << WHEEL_BITS * wheel) - 1) == 0; wheel++) {
+            Timeout sentinel = buckets[wheel][(int) (tick >>> WHEEL_BITS * wheel) & WHEEL_SIZE - 1];
+            while (sentinel.next != sentinel) {
+                Timeout timeout = sentinel.next;
+                unlink(timeout);
+                add(timeout);
+            }
+        }
+        Timeout sentinel = buckets[0][(int) tick & WHEEL_SIZE - 1];
+        while (sentinel.next != sentinel) {
+            Timeout timeout = sentinel.next;
+            unlink(timeout);
+            size--;
+            due.add(timeout);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed && due.isEmpty()) {
+                        long now = System.nanoTime() - startNanos;
+                        if (size == 0) {
+                            wait();
+                        } else if (tick < now / tickNanos) {
+                            while (tick < now / tickNanos && due.isEmpty()) {
+                                advance();
+                            }
+                        } else {
+                            long nanos = (tick + 1) * tickNanos - now;
+                            wait(nanos / 1_000_000, (int) (nanos % 1_000_000));
+                            wakeUps++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (closed) {
+                    return;
+                }
+                expired += due.size();
+            }
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    // A failing task doesn't stop the others
+                    log.error("Timeout task failed", e);
+                }
+            }
+            due.clear();
+        }
+    }
+
+    /** Stops the thread; the armed timeouts never run. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notify();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
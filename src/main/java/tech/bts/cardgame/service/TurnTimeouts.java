@@ -0,0 +1,270 @@
+package tech.bts.cardgame.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tech.bts.cardgame.metrics.MetricsSource;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameChanges;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deadlines that keep games going when players stop playing, on a {@link TimingWheel}.
+ * <p>
+ * Each player of a game being played has turn-ms to act while their hand isn't full; each action gives them that
+ * again. When the time is over, their turn is played for them: the picked card, or a new one, is discarded until the
+ * last discard fills the hand (see Game.discard). A game nobody joined for open-ms is finished. Both are run as actions
+ * of the game, so they never overlap with the actions of the players; a deadline armed again in the meantime wins.
+ * A deadline whose action fails is armed again, up to MAXIMUM_ATTEMPTS times, then given up on (and logged).
+ * A timeout of 0 disables that deadline.
+ */
+@Component
+public class TurnTimeouts implements MetricsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(TurnTimeouts.class);
+
+    // Deadlines of a game: one per player slot, then the one of the open game
+    private static final int OPEN = Game.MAXIMUM_PLAYER_NUM;
+
+    public static final int MAXIMUM_ATTEMPTS = 3;
+
+    private final long turnMillis;
+    private final long openMillis;
+    private final TimingWheel wheel;
+    private final Map<Long, Expiry[]> deadlines = new ConcurrentHashMap<>();
+    private GameExecutor gameExecutor;
+
+    private final LongAdder turnsPlayed = new LongAdder();
+    private final LongAdder gamesReaped = new LongAdder();
+    private final LongAdder failedExpiries = new LongAdder();
+    private final LongAdder abandonedDeadlines = new LongAdder();
+
+    @Autowired
+    public TurnTimeouts(@Value("${cardgame.timeouts.turn-ms:60000}") long turnMillis,
+                        @Value("${cardgame.timeouts.open-ms:600000}") long openMillis,
+                        @Value("${cardgame.timeouts.tick-ms:100}") long tickMillis) {
+        this.turnMillis = turnMillis;
+        this.openMillis = openMillis;
+        this.wheel = new TimingWheel("turn-timeouts", tickMillis);
+    }
+
+    /** Called by GameService with the executor the expired deadlines are played on. */
+    void start(GameExecutor gameExecutor) {
+        this.gameExecutor = gameExecutor;
+    }
+
+    /** Called after a game is created, open or already played by the players it was created with. */
+    public void created(Game game) {
+        changed(game, GameChanges.STATE_CHANGED);
+    }
+
+    /** Called after a game is saved, on its executor, with the parts it changed (see GameChanges.getParts()). */
+    public void changed(Game game, int changes) {
+        long gameId = game.getId();
+        switch (game.getState()) {
+            case OPEN:
+                // Someone joined: the game isn't abandoned
+                arm(gameId, OPEN, openMillis);
+                break;
+            case PLAYING:
+                disarm(gameId, OPEN);
+                for (int slot = 0; slot < game.getPlayerCount(); slot++) {
+                    // A new round (or the start of the game) is a change of state
+                    if ((changes & GameChanges.STATE_CHANGED) != 0 || GameChanges.isPlayerChanged(changes, slot)) {
+                        if (game.getPlayer(slot).getHand().handSize() < Game.HAND_SIZE) {
+                            arm(gameId, slot, turnMillis);
+                        } else {
+                            disarm(gameId, slot);
+                        }
+                    }
+                }
+                break;
+            case FINISHED:
+                Expiry[] expiries = deadlines.remove(gameId);
+                if (expiries != null) {
+                    for (int index = 0; index < expiries.length; index++) {
+                        disarm(expiries, index);
+                    }
+                }
+                break;
+        }
+    }
+
+    /** Arms the deadlines of a game saved by a previous run, e.g. on startup. */
+    public void resumed(GameSummary game) {
+        if (game.getState() == Game.State.OPEN) {
+            arm(game.getId(), OPEN, openMillis);
+        } else if (game.getState() == Game.State.PLAYING) {
+            for (int slot = 0; slot < game.getPlayerNames().size(); slot++) {
+                arm(game.getId(), slot, turnMillis);
+            }
+        }
+    }
+
+    /**
+     * Arms a deadline, replacing the one armed at that index. A game is created on the request thread and changed on
+     * its executor, so the deadlines of a game are only read and replaced holding their array, and a deadline is
+     * scheduled before it is published there, so it can always be cancelled.
+     */
+    private void arm(long gameId, int index, long millis) {
+        arm(gameId, index, millis, 1);
+    }
+
+    private void arm(long gameId, int index, long millis, int attempt) {
+        if (millis <= 0) {
+            return;
+        }
+        Expiry[] expiries = deadlines.computeIfAbsent(gameId, id -> new Expiry[OPEN + 1]);
+        Expiry expiry = new Expiry(gameId, index, attempt);
+        expiry.timeout = wheel.schedule(expiry, millis, TimeUnit.MILLISECONDS);
+        Expiry previous;
+        synchronized (expiries) {
+            previous = expiries[index];
+            expiries[index] = expiry;
+        }
+        if (previous != null) {
+            previous.timeout.cancel();
+        }
+        if (deadlines.get(gameId) != expiries) {
+            // The game finished meanwhile
+            disarm(expiries, index);
+        }
+    }
+
+    private void disarm(long gameId, int index) {
+        Expiry[] expiries = deadlines.get(gameId);
+        if (expiries != null) {
+            disarm(expiries, index);
+        }
+    }
+
+    private static void disarm(Expiry[] expiries, int index) {
+        Expiry expiry;
+        synchronized (expiries) {
+            expiry = expiries[index];
+            expiries[index] = null;
+        }
+        if (expiry != null) {
+            expiry.timeout.cancel();
+        }
+    }
+
+    /** Runs on the executor of the game, unless the deadline was armed again or disarmed since it expired. */
+    private Void expire(Game game, Expiry expiry) {
+        Expiry[] expiries = deadlines.get(game.getId());
+        if (expiries == null) {
+            return null;
+        }
+        synchronized (expiries) {
+            if (expiries[expiry.index] != expiry) {
+                return null;
+            }
+            expiries[expiry.index] = null;
+        }
+        if (expiry.index == OPEN) {
+            if (game.getState() == Game.State.OPEN) {
+                game.setState(Game.State.FINISHED);
+                gamesReaped.increment();
+            }
+        } else if (game.getState() == Game.State.PLAYING && expiry.index < game.getPlayerCount()) {
+            playTurn(game, game.getPlayer(expiry.index));
+        }
+        return null;
+    }
+
+    /** Arms a deadline whose action failed again, unless it was armed again since or the game finished. */
+    private void failed(Expiry expiry, Throwable error) {
+        failedExpiries.increment();
+        Expiry[] expiries = deadlines.get(expiry.gameId);
+        if (expiries == null) {
+            return;
+        }
+        synchronized (expiries) {
+            if (expiries[expiry.index] != null && expiries[expiry.index] != expiry) {
+                return;
+            }
+        }
+        if (expiry.attempt < MAXIMUM_ATTEMPTS) {
+            log.warn("Deadline {} of game {} failed, arming it again", expiry.index, expiry.gameId, error);
+            arm(expiry.gameId, expiry.index, expiry.index == OPEN ? openMillis : turnMillis, expiry.attempt + 1);
+        } else {
+            log.error("Deadline {} of game {} failed {} times, giving up on it", expiry.index, expiry.gameId,
+                    expiry.attempt, error);
+            abandonedDeadlines.increment();
+        }
+    }
+
+    /** Discards the picked card, or a new one, until the last discard fills the hand; stops at the end of the round. */
+    private void playTurn(Game game, Player player) {
+        int round = game.getRound();
+        if (player.getHand().handSize() == Game.HAND_SIZE) {
+            return;
+        }
+        while (game.getRound() == round && player.getHand().handSize() < Game.HAND_SIZE) {
+            if (player.getPickedCard() == null) {
+                game.pickCard(player.getName());
+            }
+            game.discard(player.getName());
+        }
+        turnsPlayed.increment();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "timeouts";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("armed", wheel.size());
+        metrics.put("expired", wheel.expiredCount());
+        metrics.put("wakeUps", wheel.wakeUpCount());
+        metrics.put("turnsPlayed", turnsPlayed.sum());
+        metrics.put("gamesReaped", gamesReaped.sum());
+        metrics.put("failedExpiries", failedExpiries.sum());
+        metrics.put("abandonedDeadlines", abandonedDeadlines.sum());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void close() {
+        wheel.close();
+    }
+
+    /** The task of a deadline: plays it as an action of the game. */
+    private class Expiry implements Runnable {
+
+        private final long gameId;
+        private final int index;
+        private final int attempt;
+        private TimingWheel.Timeout timeout;
+
+        Expiry(long gameId, int index, int attempt) {
+            this.gameId = gameId;
+            this.index = index;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            if (gameExecutor != null) {
+                gameExecutor.submit(gameId, game -> expire(game, this)).whenComplete((result, error) -> {
+                    if (error != null) {
+                        failed(this, error);
+                    }
+                });
+            }
+        }
+    }
+}
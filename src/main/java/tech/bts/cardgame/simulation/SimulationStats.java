@@ -0,0 +1,121 @@
+package tech.bts.cardgame.simulation;
+
+public class SimulationStats {
+
+    private long games;
+    private long rounds;
+    private long roundDraws;
+    private long firstWins;
+    private long secondWins;
+    private long gameDraws;
+    private long exhaustedDecks;
+    private long cardsLeft;
+    private long elapsedNanos;
+
+    void addRound(boolean draw) {
+        rounds++;
+        if (draw) {
+            roundDraws++;
+        }
+    }
+
+    void addGame(int firstPoints, int secondPoints, int deckSize, boolean exhausted) {
+        games++;
+        if (firstPoints > secondPoints) {
+            firstWins++;
+        } else if (firstPoints < secondPoints) {
+            secondWins++;
+        } else {
+            gameDraws++;
+        }
+        if (exhausted) {
+            exhaustedDecks++;
+        }
+        cardsLeft += deckSize;
+    }
+
+    SimulationStats merge(SimulationStats other) {
+        games += other.games;
+        rounds += other.rounds;
+        roundDraws += other.roundDraws;
+        firstWins += other.firstWins;
+        secondWins += other.secondWins;
+        gameDraws += other.gameDraws;
+        exhaustedDecks += other.exhaustedDecks;
+        cardsLeft += other.cardsLeft;
+        return this;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    public long getRoundDraws() {
+        return roundDraws;
+    }
+
+    public long getFirstWins() {
+        return firstWins;
+    }
+
+    public long getSecondWins() {
+        return secondWins;
+    }
+
+    public long getGameDraws() {
+        return gameDraws;
+    }
+
+    /** Games that ended because a player tried to pick from an empty deck. */
+    public long getExhaustedDecks() {
+        return exhaustedDecks;
+    }
+
+    public double getFirstWinRate() {
+        return ratio(firstWins, games);
+    }
+
+    public double getSecondWinRate() {
+        return ratio(secondWins, games);
+    }
+
+    public double getGameDrawRate() {
+        return ratio(gameDraws, games);
+    }
+
+    public double getRoundDrawRate() {
+        return ratio(roundDraws, rounds);
+    }
+
+    public double getAverageRounds() {
+        return ratio(rounds, games);
+    }
+
+    public double getAverageCardsLeft() {
+        return ratio(cardsLeft, games);
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    private static double ratio(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d games in %.2f s (%.0f games/s): first wins %.2f%%, second wins %.2f%%, draws %.2f%%, "
+                        + "%.2f rounds per game (%.2f%% drawn), %.2f cards left, %d exhausted decks",
+                games, elapsedNanos / 1e9, getGamesPerSecond(), getFirstWinRate() * 100, getSecondWinRate() * 100,
+                getGameDrawRate() * 100, getAverageRounds(), getRoundDrawRate() * 100, getAverageCardsLeft(), exhaustedDecks);
+    }
+}
@@ -0,0 +1,112 @@
+package tech.bts.cardgame.simulation;
+
+import tech.bts.cardgame.exception.EmptyDeckException;
+import tech.bts.cardgame.model.Card;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.HandTable;
+import tech.bts.cardgame.model.Player;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays complete games with the rules of {@link Game}, splitting the work across a fork/join pool.
+ * Every task gets its own random generator split from the seed, so a run can be repeated exactly.
+ */
+public class Simulator {
+
+    private static final long GAMES_PER_TASK = 5_000;
+    private static final String FIRST = "first";
+    private static final String SECOND = "second";
+
+    private final Strategy first;
+    private final Strategy second;
+    private final ForkJoinPool pool;
+
+    public Simulator(Strategy first, Strategy second) {
+        this(first, second, ForkJoinPool.commonPool());
+    }
+
+    public Simulator(Strategy first, Strategy second, ForkJoinPool pool) {
+        this.first = first;
+        this.second = second;
+        this.pool = pool;
+    }
+
+    public SimulationStats run(long games, long seed) {
+        long start = System.nanoTime();
+        SimulationStats stats = pool.invoke(new SimulationTask(games, new SplittableRandom(seed)));
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return stats;
+    }
+
+    private class SimulationTask extends RecursiveTask<SimulationStats> {
+
+        private final long games;
+        private final SplittableRandom random;
+
+        SimulationTask(long games, SplittableRandom random) {
+            this.games = games;
+            this.random = random;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (games <= GAMES_PER_TASK) {
+                SimulationStats stats = new SimulationStats();
+                for (long i = 0; i < games; i++) {
+                    play(stats);
+                }
+                return stats;
+            }
+            SimulationTask left = new SimulationTask(games / 2, random.split());
+            SimulationTask right = new SimulationTask(games - games / 2, random.split());
+            left.fork();
+            SimulationStats stats = right.compute();
+            return stats.merge(left.join());
+        }
+
+        private void play(SimulationStats stats) {
+            Game game = new Game(Deck.shuffled(random.nextLong()));
+            Player player1 = game.join(FIRST);
+            Player player2 = game.join(SECOND);
+            boolean exhausted = false;
+            try {
+                while (game.getState() == Game.State.PLAYING) {
+                    int round = game.getRound();
+                    int points = player1.getPoint() + player2.getPoint();
+                    turn(game, player1, first);
+                    if (game.getRound() == round) {
+                        turn(game, player2, second);
+                    }
+                    if (game.getRound() != round) {
+                        stats.addRound(player1.getPoint() + player2.getPoint() == points);
+                    }
+                }
+            } catch (EmptyDeckException e) {
+                exhausted = true;
+            }
+            stats.addGame(player1.getPoint(), player2.getPoint(), game.getDeckSize(), exhausted);
+        }
+
+        private void turn(Game game, Player player, Strategy strategy) {
+            if (player.getHand().handSize() == Game.HAND_SIZE) {
+                return;
+            }
+            Card card = game.pickCard(player.getName());
+            if (player.getDiscardCounter() < Game.MAXIMUM_DISCARD && !strategy.keep(player, card, random)) {
+                game.discard(player.getName());
+            } else {
+                game.keep(player.getName());
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        Simulator simulator = new Simulator(Strategy.handStrength(HandTable.MAXIMUM_STRENGTH / 2), Strategy.alwaysKeep());
+        System.out.println(simulator.run(games, System.nanoTime()));
+    }
+}
@@ -0,0 +1,37 @@
+package tech.bts.cardgame.simulation;
+
+import tech.bts.cardgame.model.Card;
+import tech.bts.cardgame.model.HandTable;
+import tech.bts.cardgame.model.Player;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides what a simulated player does with the card they just picked.
+ * Strategies are shared by all simulation threads, so they must not keep state.
+ */
+@FunctionalInterface
+public interface Strategy {
+
+    /** Returns true to keep the picked card, false to discard it. */
+    boolean keep(Player player, Card pickedCard, SplittableRandom random);
+
+    static Strategy alwaysKeep() {
+        return (player, pickedCard, random) -> true;
+    }
+
+    static Strategy random(double keepProbability) {
+        return (player, pickedCard, random) -> random.nextDouble() < keepProbability;
+    }
+
+    /** Keeps cards that have at least one skill with the given points or more. */
+    static Strategy threshold(int minimumPoint) {
+        return (player, pickedCard, random) ->
+                Math.max(pickedCard.getMagicPoint(), Math.max(pickedCard.getStrengthPoint(), pickedCard.getIntelligencePoint())) >= minimumPoint;
+    }
+
+    /** Keeps cards that give the hand at least the given expected strength (0 to {@link HandTable#MAXIMUM_STRENGTH}). */
+    static Strategy handStrength(int minimumStrength) {
+        return (player, pickedCard, random) -> HandTable.getExpectedStrength(player.getHand(), pickedCard) >= minimumStrength;
+    }
+}
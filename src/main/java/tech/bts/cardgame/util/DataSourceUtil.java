@@ -1,23 +1,61 @@
 package tech.bts.cardgame.util;
 
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 
 import javax.sql.DataSource;
 
 public class DataSourceUtil {
 
-    public static DataSource getDataSourceInPath() {
+    // H2 keeps the parsed statements of each connection in a cache; pooled connections keep theirs
+    public static final String URL_IN_PATH = "jdbc:h2:~/gamesdb;MODE=MYSQL;QUERY_CACHE_SIZE=64";
+    public static final String URL_IN_MEM = "jdbc:h2:mem:test;MODE=MYSQL;QUERY_CACHE_SIZE=64;DB_CLOSE_DELAY=-1";
+    public static final String USERNAME = "dbuser";
+    public static final String PASSWORD = "dbpass";
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private static DataSource dataSourceInPath;
+    private static DataSource dataSourceInMem;
+
+    public static synchronized DataSource getDataSourceInPath() {
 
         // H2 will create the database here
 
-        return new DriverManagerDataSource(
-                "jdbc:h2:~/gamesdb;MODE=MYSQL",
-                "dbuser", "dbpass");
+        if (dataSourceInPath == null) {
+            dataSourceInPath = createPool(URL_IN_PATH, USERNAME, PASSWORD, DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, null);
+        }
+        return dataSourceInPath;
     }
-    public static DataSource getDataSourceInMem() {
 
-        return new DriverManagerDataSource(
-                "jdbc:h2:mem:test;MODE=MYSQL",
-                "dbuser", "dbpass");
+    public static synchronized DataSource getDataSourceInMem() {
+
+        if (dataSourceInMem == null) {
+            dataSourceInMem = createPool(URL_IN_MEM, USERNAME, PASSWORD, DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, null);
+        }
+        return dataSourceInMem;
+    }
+
+    /**
+     * Creates a pool of at most maximumPoolSize connections, checked with Connection.isValid()
+     * before they are handed out.
+     */
+    public static HikariDataSource createPool(String url, String username, String password,
+                                              int maximumPoolSize, int minimumIdle,
+                                              MetricsTrackerFactory metrics) {
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("cardgame");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(Math.min(minimumIdle, maximumPoolSize));
+        config.setValidationTimeout(1000);
+        if (metrics != null) {
+            config.setMetricsTrackerFactory(metrics);
+        }
+        return new HikariDataSource(config);
     }
-}
\ No newline at end of file
+}
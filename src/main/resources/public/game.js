@@ -1,14 +1,43 @@
 const urlParams = new URLSearchParams(window.location.search);
 const gameId = urlParams.get('id');
 
-axios.get("/api/games/" + gameId)
-    .then(function(response) {
-        const game = response.data;
-        displayGame(game);
-    })
-    .catch(function(error) {
-        displayError(error);
-    });
+let shownGame = null;
+
+loadGame();
+
+// Changes of the game are pushed; a change that doesn't start from the shown version means some were skipped
+new EventSource("/api/games/" + gameId + "/events").addEventListener("game", function(event) {
+    const change = JSON.parse(event.data);
+    if (shownGame == null || change.from !== shownGame.version) {
+        loadGame();
+        return;
+    }
+    shownGame.version = change.version;
+    if (change.state) {
+        shownGame.state = change.state;
+    }
+    for (let player of change.players || []) {
+        shownGame.playerNames[player.slot] = player.name;
+    }
+    showGame(shownGame);
+});
+
+// The browser sends the ETag of the game it has, so an unchanged game comes back as 304 and is taken from its cache
+function loadGame() {
+    axios.get("/api/games/" + gameId)
+        .then(function(response) {
+            showGame(response.data);
+        })
+        .catch(function(error) {
+            displayError(error);
+        });
+}
+
+function showGame(game) {
+    shownGame = game;
+    document.getElementById("game-container").innerHTML = "";
+    displayGame(game);
+}
 
 
 function displayGame(game) {
@@ -46,12 +75,12 @@ function displayError(error) {
 }
 
 function updateGame(username) {
-    axios.put("/api/games/" + ${game.id} + "/join", {username})
+    // The page is updated by the event of the join
+    axios.put("/api/games/" + gameId + "/join", {username})
         .then(function (response) {
             console.log(response.data);
         })
         .catch(function (error) {
             console.log(error);
         });
-    location.reload();
 }
\ No newline at end of file
@@ -11,22 +11,36 @@ function displayGames() {
             // This function will be called when the data comes
             // At this point, games contains the data that the end-point sends (the list of games)
 
-            let gamesContainer = document.getElementById("container");
-
             for (let game of games) {
-
-                const p = document.createElement("p");
-                const a = document.createElement("a");
-                a.href = "/api/games/${game.id}";
-                a.innerHTML = "link";
-                p.innerHTML = `Game ${game.id} is ${game.state}`;
-                p.appendChild(a);
-                gamesContainer.appendChild(p);
+                displayGame(game);
             }
+
+            // Then the summaries of the games created or changed are pushed
+            new EventSource("/api/games/events").addEventListener("summary", function(event) {
+                displayGame(JSON.parse(event.data));
+            });
         });
 }
 
+function displayGame(game) {
+
+    let gamesContainer = document.getElementById("container");
+
+    let p = document.getElementById("game-" + game.id);
+    if (p == null) {
+        p = document.createElement("p");
+        p.id = "game-" + game.id;
+        gamesContainer.appendChild(p);
+    }
+    const a = document.createElement("a");
+    a.href = `/game.html?id=${game.id}`;
+    a.innerHTML = "link";
+    p.innerHTML = `Game ${game.id} is ${game.state} `;
+    p.appendChild(a);
+}
+
 function createGame() {
+    // The new game is shown by its event
     axios.post("/api/games")
         .then(function (response) {
             console.log(response.data);
@@ -34,10 +48,27 @@ function createGame() {
         .catch(function (error) {
             console.log(error);
         });
-    location.reload();
     //location.href = "/games.html";
 }
 
+function findGame() {
+    const username = document.getElementById("username").value;
+    document.getElementById("matchmaking").innerHTML = "Waiting for another player...";
+
+    // The answer comes when another player is found; if the request times out, asking again keeps the place
+    axios.post("/api/matchmaking", {username})
+        .then(function (response) {
+            location.href = `/game.html?id=${response.data}`;
+        })
+        .catch(function (error) {
+            if (error.response && error.response.status === 503) {
+                findGame();
+            } else {
+                document.getElementById("matchmaking").innerHTML = "Error: " + (error.response ? error.response.data.message : error);
+            }
+        });
+}
+
 //document.querySelector("#id_name")
 //document.querySelector(".class_name")
 //document.querySelector("tag_name") : <div>, <p>, <a>
\ No newline at end of file
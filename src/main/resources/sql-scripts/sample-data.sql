@@ -1,11 +1,13 @@
-CREATE TABLE games (
-  id INT AUTO_INCREMENT PRIMARY KEY,
-  state VARCHAR(50) NOT NULL,
-  players VARCHAR(100),
-);
+insert into games (state, deck_size) values
+    ('PLAYING', 36),
+    ('OPEN', null),
+    ('OPEN', null);
 
-insert into games (state, players) values
-    ('PLAYING', 'dog,cat'),
-    ('OPEN', 'bird'),
-    ('OPEN', NULL);
+-- The 36 cards of game 1, not shuffled (the top one last)
+insert into game_decks (game_id, cards, size) values
+    (1, X'000102030405060708090A0B0C0D0E0F101112131415161718191A1B1C1D1E1F20212223', 36);
 
+insert into game_players (game_id, slot, name) values
+    (1, 0, 'dog'),
+    (1, 1, 'cat'),
+    (2, 0, 'bird');
@@ -0,0 +1,76 @@
+CREATE TABLE IF NOT EXISTS games (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  state VARCHAR(50) NOT NULL,
+  seed BIGINT,
+  round INT NOT NULL DEFAULT 0,
+  -- Milliseconds since the epoch
+  created BIGINT NOT NULL DEFAULT 0,
+  -- Game.getVersion(), the ETag of the game
+  version BIGINT NOT NULL DEFAULT 0,
+  -- Cards left in the deck, written with the version (the cards are in game_decks)
+  deck_size INT
+);
+
+-- Databases created before the game state was stored only have id, state and players
+ALTER TABLE games ADD COLUMN IF NOT EXISTS seed BIGINT;
+ALTER TABLE games ADD COLUMN IF NOT EXISTS round INT NOT NULL DEFAULT 0;
+ALTER TABLE games ADD COLUMN IF NOT EXISTS created BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE games ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE games ADD COLUMN IF NOT EXISTS deck_size INT;
+-- The player names are in game_players
+ALTER TABLE games DROP COLUMN IF EXISTS players;
+
+-- Searches by state or creation time, in the order of the ids
+DROP INDEX IF EXISTS games_state;
+CREATE INDEX IF NOT EXISTS games_state_id ON games (state, id);
+CREATE INDEX IF NOT EXISTS games_created_id ON games (created, id);
+
+-- Cards of the deck when it was dealt (card indexes, the top one last); picking only moves games.deck_size
+CREATE TABLE IF NOT EXISTS game_decks (
+  game_id BIGINT PRIMARY KEY,
+  cards VARBINARY(255) NOT NULL,
+  size INT NOT NULL,
+  FOREIGN KEY (game_id) REFERENCES games (id) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS game_players (
+  game_id BIGINT NOT NULL,
+  slot INT NOT NULL,
+  name VARCHAR(50) NOT NULL,
+  discard_counter INT NOT NULL DEFAULT 0,
+  picked_card INT,
+  points INT NOT NULL DEFAULT 0,
+  PRIMARY KEY (game_id, slot),
+  FOREIGN KEY (game_id) REFERENCES games (id) ON DELETE CASCADE
+);
+
+-- Searches by player, in the order of the ids
+DROP INDEX IF EXISTS game_players_name;
+CREATE INDEX IF NOT EXISTS game_players_name_game ON game_players (name, game_id);
+
+CREATE TABLE IF NOT EXISTS game_hand_cards (
+  game_id BIGINT NOT NULL,
+  slot INT NOT NULL,
+  position INT NOT NULL,
+  card INT NOT NULL,
+  PRIMARY KEY (game_id, slot, position),
+  FOREIGN KEY (game_id) REFERENCES games (id) ON DELETE CASCADE
+);
+
+-- Event log of the games: the events of each save (see GameCodec.encodeEvents), by the version of the first one
+CREATE TABLE IF NOT EXISTS game_events (
+  game_id BIGINT NOT NULL,
+  version BIGINT NOT NULL,
+  events VARBINARY(4096) NOT NULL,
+  PRIMARY KEY (game_id, version),
+  FOREIGN KEY (game_id) REFERENCES games (id) ON DELETE CASCADE
+);
+
+-- Whole games (see GameCodec.encode) at some of their versions, to replay the events from
+CREATE TABLE IF NOT EXISTS game_snapshots (
+  game_id BIGINT NOT NULL,
+  version BIGINT NOT NULL,
+  state VARBINARY(1024) NOT NULL,
+  PRIMARY KEY (game_id, version),
+  FOREIGN KEY (game_id) REFERENCES games (id) ON DELETE CASCADE
+);
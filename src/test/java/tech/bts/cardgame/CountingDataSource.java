@@ -0,0 +1,48 @@
+package tech.bts.cardgame;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counts the statements sent to the database. */
+class CountingDataSource extends DelegatingDataSource {
+
+    final AtomicLong roundTrips = new AtomicLong();
+
+    CountingDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingProxy(super.getConnection(), Connection.class);
+    }
+
+    private <T> T countingProxy(T target, Class<T> type) {
+        return type.cast(proxy(target, type));
+    }
+
+    /** Proxy of the connection or statement that counts its executions, and proxies the statements it creates. */
+    private Object proxy(Object target, Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                roundTrips.incrementAndGet();
+            }
+            try {
+                Object result = method.invoke(target, args);
+                if (result instanceof Statement) {
+                    return proxy(result, method.getReturnType());
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
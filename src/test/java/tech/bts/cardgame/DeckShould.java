@@ -0,0 +1,47 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.model.Card;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class DeckShould {
+
+    @Test
+    public void contain_every_card_once_after_shuffling() {
+
+        Deck d = new Deck();
+        d.generate();
+        d.shuffle();
+
+        List<Card> cards = d.getDeck();
+
+        assertThat(cards.size(), is(Card.COUNT));
+        assertThat(new HashSet<>(cards).size(), is(Card.COUNT));
+    }
+
+    @Test
+    public void give_the_same_order_for_the_same_seed() {
+
+        Deck d1 = Deck.shuffled(42);
+        Deck d2 = Deck.shuffled(42);
+
+        assertThat(d1.getDeck(), is(d2.getDeck()));
+        assertThat(new Game(d1).getSeed(), is(42L));
+    }
+
+    @Test
+    public void not_have_a_seed_if_not_shuffled() {
+
+        Deck d = new Deck();
+        d.generate();
+
+        assertThat(new Game(d).getSeed(), nullValue());
+    }
+}
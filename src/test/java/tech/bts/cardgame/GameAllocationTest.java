@@ -0,0 +1,72 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.*;
+
+public class GameAllocationTest {
+
+    private static final long MAXIMUM_BYTES = 256;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void not_allocate_while_playing_rounds() {
+
+        for (int i = 0; i < 10_000; i++) {
+            play(newGame(), i % 3 == 0);
+        }
+
+        Game g = newGame();
+        long threadId = Thread.currentThread().getId();
+        long baseline = measureNothing(threadId);
+
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        play(g, true);
+        long after = THREADS.getThreadAllocatedBytes(threadId);
+
+        assertThat(g.getState(), is(Game.State.FINISHED));
+        // A bound, not an exact count, as the JVM may allocate a few bytes of its own; one small object per action
+        // would be well over it
+        assertThat(after - before, is(lessThanOrEqualTo(baseline + MAXIMUM_BYTES)));
+    }
+
+    private long measureNothing(long threadId) {
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        long after = THREADS.getThreadAllocatedBytes(threadId);
+        return after - before;
+    }
+
+    private Game newGame() {
+        Deck d = new Deck();
+        d.generate();
+        Game g = new Game(d);
+        g.join("john");
+        g.join("peter");
+        return g;
+    }
+
+    private void play(Game g, boolean discardFirst) {
+        while (g.getState() == Game.State.PLAYING) {
+            if (discardFirst) {
+                g.pickCard("john");
+                g.discard("john");
+            }
+            for (int i = 0; i < Game.HAND_SIZE && g.getState() == Game.State.PLAYING; i++) {
+                if (g.getPlayer("john").getHand().handSize() < Game.HAND_SIZE) {
+                    g.pickCard("john");
+                    g.keep("john");
+                }
+                g.pickCard("peter");
+                g.keep("peter");
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.service.GameCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    public void load_a_game_once_while_it_is_used() {
+
+        CountingRepository repo = new CountingRepository();
+        Game game = new Game(Deck.shuffled(1));
+        repo.create(game);
+        GameCache cache = new GameCache(repo, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), nanos::get);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.get(game.getId()), is(sameInstance(game)));
+            nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        }
+
+        assertThat(repo.loads.get(), is(1));
+        assertThat(cache.getMetrics().get("hits"), is(9L));
+        assertThat(cache.getMetrics().get("misses"), is(1L));
+    }
+
+    @Test
+    public void expire_finished_games_sooner() {
+
+        CountingRepository repo = new CountingRepository();
+        Game playing = new Game(Deck.shuffled(1));
+        Game finished = new Game(Deck.shuffled(2));
+        finished.setState(Game.State.FINISHED);
+        repo.create(playing);
+        repo.create(finished);
+        GameCache cache = new GameCache(repo, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), nanos::get);
+        cache.put(playing);
+        cache.put(finished);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+
+        assertThat(cache.size(), is(1L));
+        cache.get(finished.getId());
+        assertThat(repo.loads.get(), is(1));
+    }
+
+    @Test
+    public void load_an_invalidated_game_again() {
+
+        CountingRepository repo = new CountingRepository();
+        Game game = new Game(Deck.shuffled(1));
+        repo.create(game);
+        GameCache cache = new GameCache(repo, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), nanos::get);
+
+        cache.get(game.getId());
+        cache.invalidate(game.getId());
+        cache.get(game.getId());
+
+        assertThat(repo.loads.get(), is(2));
+        assertThat(cache.get(12345), is(nullValue()));
+    }
+
+    @Test
+    public void keep_at_most_the_maximum_size() {
+
+        CountingRepository repo = new CountingRepository();
+        GameCache cache = new GameCache(repo, 10, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), nanos::get);
+        for (int i = 0; i < 100; i++) {
+            Game game = new Game(Deck.shuffled(i));
+            repo.create(game);
+            cache.get(game.getId());
+        }
+
+        assertThat(cache.size(), is(10L));
+        assertThat(cache.getMetrics().get("evictions"), is(90L));
+    }
+
+    private static class CountingRepository extends GameRepositoryMap {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public Game getById(long id) {
+            loads.incrementAndGet();
+            return super.getById(id);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package tech.bts.cardgame;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameChanges;
+import tech.bts.cardgame.service.GameEvents;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameEventsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GameEvents events = new GameEvents(objectMapper, 60_000, 3, 60_000, 2);
+
+    @After
+    public void close() {
+        events.close();
+    }
+
+    @Test
+    public void send_the_same_encoded_change_to_every_subscriber() throws Exception {
+
+        Game game = new Game(Deck.shuffled(1));
+        game.setId(1);
+        game.join("john");
+        game.join("peter");
+        GameChanges changes = GameChanges.saved(game);
+        Client first = new Client(true);
+        Client second = new Client(true);
+        events.subscribe(1, first.request, first.response);
+        events.subscribe(1, second.request, second.response);
+        assertThat(first.response.getContentType(), is(MediaType.TEXT_EVENT_STREAM_VALUE));
+
+        long from = changes.getSavedVersion();
+        game.pickCard("peter");
+        events.changed(game, changes.getParts(), from);
+
+        byte[] data = first.awaitFrame(0);
+        assertThat(second.awaitFrame(0), is(sameInstance(data)));
+        String frame = new String(data, StandardCharsets.UTF_8);
+        assertThat(frame, startsWith("event:game\nid:" + game.getVersion() + "\ndata:"));
+        JsonNode change = objectMapper.readTree(frame.substring(frame.indexOf("data:") + 5));
+        assertThat(change.get("from").asLong(), is(from));
+        assertThat(change.get("deckSize").asInt(), is(game.getDeckSize()));
+        assertThat(change.has("state"), is(false));
+        assertThat(change.get("players").size(), is(1));
+        assertThat(change.get("players").get(0).get("name").asText(), is("peter"));
+        assertThat(change.get("players").get(0).get("picked").asBoolean(), is(true));
+    }
+
+    @Test
+    public void send_only_the_latest_change_of_a_game_to_a_slow_subscriber() throws Exception {
+
+        Client lobby = new Client(false);
+        events.subscribeToLobby(lobby.request, lobby.response);
+        Game game = new Game(Deck.shuffled(1));
+        game.setId(1);
+        events.created(game);
+        GameChanges changes = GameChanges.saved(game);
+        for (String name : new String[]{"john", "peter"}) {
+            game.join(name);
+            events.changed(game, changes.getParts(), changes.getSavedVersion());
+            changes.markSaved(game);
+        }
+        lobby.out.becomeReady();
+
+        String last = new String(lobby.awaitFrame(0), StandardCharsets.UTF_8);
+        assertThat(last, containsString("\"state\":\"PLAYING\""));
+        assertThat(events.getMetrics().get("coalesced"), is(2L));
+        Thread.sleep(50);
+        assertThat(lobby.out.frames.size(), is(1));
+    }
+
+    @Test
+    public void disconnect_a_subscriber_with_too_many_games_waiting() throws Exception {
+
+        Client lobby = new Client(false);
+        events.subscribeToLobby(lobby.request, lobby.response);
+        for (int id = 1; id <= 5; id++) {
+            Game game = new Game(Deck.shuffled(id));
+            game.setId(id);
+            events.created(game);
+        }
+
+        lobby.awaitDisconnected();
+        assertThat(events.getMetrics().get("dropped"), is(1L));
+        assertThat(events.getMetrics().get("lobbySubscribers"), is(0));
+    }
+
+    @Test
+    public void disconnect_a_game_subscriber_that_stopped_reading_without_holding_up_the_others() throws Exception {
+
+        GameEvents events = new GameEvents(objectMapper, 60_000, 3, 50, 1);
+        try {
+            Game game = new Game(Deck.shuffled(1));
+            game.setId(1);
+            game.join("john");
+            GameChanges changes = GameChanges.saved(game);
+            Client stuck = new Client(true);
+            Client reading = new Client(true);
+            events.subscribe(1, stuck.request, stuck.response);
+            events.subscribe(1, reading.request, reading.response);
+            // The client stops reading: its response takes no more writes
+            stuck.out.ready = false;
+
+            game.join("peter");
+            events.changed(game, changes.getParts(), changes.getSavedVersion());
+            changes.markSaved(game);
+            reading.awaitFrame(0);
+            Thread.sleep(100);
+            game.pickCard("peter");
+            events.changed(game, changes.getParts(), changes.getSavedVersion());
+
+            reading.awaitFrame(1);
+            stuck.awaitDisconnected();
+            assertThat(stuck.out.frames.size(), is(0));
+            assertThat(events.getMetrics().get("timedOut"), is(1L));
+            assertThat(events.getMetrics().get("gameSubscribers"), is(1));
+        } finally {
+            events.close();
+        }
+    }
+
+    /** A request to the events and its response, written to without blocking like the container's. */
+    private static class Client {
+
+        private final MockHttpServletRequest request = new MockHttpServletRequest();
+        private final StubOutputStream out;
+        private final MockHttpServletResponse response;
+
+        Client(boolean ready) {
+            request.setAsyncSupported(true);
+            out = new StubOutputStream(ready);
+            response = new MockHttpServletResponse() {
+                @Override
+                public ServletOutputStream getOutputStream() {
+                    return out;
+                }
+            };
+        }
+
+        byte[] awaitFrame(int index) throws InterruptedException {
+            for (int i = 0; i < 500 && out.frames.size() <= index; i++) {
+                Thread.sleep(10);
+            }
+            return out.frames.get(index);
+        }
+
+        void awaitDisconnected() throws InterruptedException {
+            for (int i = 0; i < 500 && request.isAsyncStarted(); i++) {
+                Thread.sleep(10);
+            }
+            assertThat(request.isAsyncStarted(), is(false));
+        }
+    }
+
+    private static class StubOutputStream extends ServletOutputStream {
+
+        private final List<byte[]> frames = new CopyOnWriteArrayList<>();
+        private volatile boolean ready;
+        private volatile WriteListener listener;
+
+        StubOutputStream(boolean ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+            if (ready) {
+                try {
+                    listener.onWritePossible();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        void becomeReady() throws IOException {
+            ready = true;
+            listener.onWritePossible();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            assertThat(ready, is(true));
+            frames.add(b);
+        }
+
+        @Override
+        public void write(int b) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.service.GameExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameExecutorTest {
+
+    private static final int GAMES = 200;
+    private static final int THREADS = 16;
+
+    @Test
+    public void play_many_games_from_many_threads() throws Exception {
+
+        Map<Long, Game> games = new ConcurrentHashMap<>();
+        for (long id = 1; id <= GAMES; id++) {
+            Game game = new Game(Deck.shuffled(id));
+            game.setId(id);
+            games.put(id, game);
+        }
+        AtomicInteger saves = new AtomicInteger();
+        GameExecutor executor = new GameExecutor(4, 8, games::get, game -> saves.incrementAndGet());
+        ExecutorService players = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> results = new ArrayList<>();
+        for (long id = 1; id <= GAMES; id++) {
+            long gameId = id;
+            results.add(players.submit(() -> play(executor, gameId, "john")));
+            results.add(players.submit(() -> play(executor, gameId, "peter")));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        players.shutdown();
+        executor.shutdown();
+
+        for (Game game : games.values()) {
+            Player john = game.getPlayer("john");
+            Player peter = game.getPlayer("peter");
+            assertThat(game.getState(), is(Game.State.FINISHED));
+            assertThat(game.getRound(), is(5));
+            assertThat(game.getDeckSize(), is(6));
+            assertTrue(john.getPoint() + peter.getPoint() <= 5);
+        }
+        assertTrue(saves.get() > 0);
+    }
+
+    private void play(GameExecutor executor, long gameId, String username) {
+        executor.execute(gameId, game -> game.join(username));
+        boolean playing = true;
+        while (playing) {
+            playing = executor.execute(gameId, game -> {
+                if (game.getState() == Game.State.FINISHED) {
+                    return false;
+                }
+                if (game.getState() == Game.State.PLAYING && game.getPlayer(username).getHand().handSize() < Game.HAND_SIZE) {
+                    game.pickCard(username);
+                }
+                return true;
+            });
+            playing = playing && executor.execute(gameId, game -> {
+                if (game.getPlayer(username).getPickedCard() != null) {
+                    game.keep(username);
+                }
+                return game.getState() != Game.State.FINISHED;
+            });
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package tech.bts.cardgame;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryJdbc;
+import tech.bts.cardgame.util.DataSourceUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the statements sent and the time to create games and then join them, with three paths of this repository:
+ * loading each game by id before inserting or updating it (what createOrUpdate used to do), createOrUpdate, and
+ * saveAll. Creating a game is 3 statements (its row, its deck, its first snapshot) and joining one is 3 more (its
+ * state, the new player, the event), so createOrUpdate sends 6 per game, and the load first adds 2 per save.
+ * saveAll sends each statement once per batch.
+ */
+public class GameRepositoryJdbcBenchmarkTest {
+
+    private static final int GAMES = 2_000;
+
+    private HikariDataSource pool;
+    private CountingDataSource dataSource;
+    private GameRepositoryJdbc repo;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        pool = DataSourceUtil.createPool("jdbc:h2:mem:benchmark;MODE=MYSQL;DB_CLOSE_DELAY=-1",
+                DataSourceUtil.USERNAME, DataSourceUtil.PASSWORD, 4, 1, null);
+        try (Connection connection = pool.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql-scripts/schema.sql"));
+        }
+        dataSource = new CountingDataSource(pool);
+        repo = new GameRepositoryJdbc(dataSource);
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.createStatement().execute("drop all objects");
+        }
+        pool.close();
+    }
+
+    @Test
+    public void save_games_without_loading_them_first() {
+
+        List<Game> games = newGames();
+        long start = System.nanoTime();
+        dataSource.roundTrips.set(0);
+        for (Game game : games) {
+            loadThenSave(game);
+        }
+        for (Game game : games) {
+            game.join("john");
+            loadThenSave(game);
+        }
+        long loadFirstRoundTrips = dataSource.roundTrips.get();
+        long loadFirstNanos = System.nanoTime() - start;
+
+        games = newGames();
+        start = System.nanoTime();
+        dataSource.roundTrips.set(0);
+        for (Game game : games) {
+            repo.createOrUpdate(game);
+        }
+        for (Game game : games) {
+            game.join("john");
+            repo.createOrUpdate(game);
+        }
+        long upsertRoundTrips = dataSource.roundTrips.get();
+        long upsertNanos = System.nanoTime() - start;
+
+        games = newGames();
+        start = System.nanoTime();
+        dataSource.roundTrips.set(0);
+        repo.saveAll(games);
+        games.forEach(game -> game.join("john"));
+        repo.saveAll(games);
+        long batchRoundTrips = dataSource.roundTrips.get();
+        long batchNanos = System.nanoTime() - start;
+
+        System.out.printf("Saving %d games twice: load first %d statements in %d ms, upsert %d in %d ms, batch %d in %d ms%n",
+                GAMES, loadFirstRoundTrips, loadFirstNanos / 1_000_000, upsertRoundTrips, upsertNanos / 1_000_000,
+                batchRoundTrips, batchNanos / 1_000_000);
+
+        assertThat(loadFirstRoundTrips, is(10L * GAMES));
+        assertThat(upsertRoundTrips, is(6L * GAMES));
+        assertThat(batchRoundTrips, is(6L));
+        assertThat(repo.getById(games.get(0).getId()).getPlayerNames().get(0), is("john"));
+    }
+
+    private List<Game> newGames() {
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++) {
+            games.add(new Game(new Deck()));
+        }
+        return games;
+    }
+
+    /** The select (the game and its players) before the save that createOrUpdate no longer does. */
+    private void loadThenSave(Game game) {
+        Game saved = repo.getById(game.getId());
+        if (saved != null) {
+            repo.update(game);
+        } else {
+            repo.create(game);
+        }
+    }
+}
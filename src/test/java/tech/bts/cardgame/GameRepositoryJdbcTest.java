@@ -0,0 +1,297 @@
+package tech.bts.cardgame;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tech.bts.cardgame.model.Card;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameChanges;
+import tech.bts.cardgame.repository.GameRepositoryJdbc;
+import tech.bts.cardgame.util.DataSourceUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameRepositoryJdbcTest {
+
+    private HikariDataSource pool;
+    private CountingDataSource dataSource;
+    private GameRepositoryJdbc repo;
+
+    @Before
+    public void createDatabase() {
+        pool = DataSourceUtil.createPool("jdbc:h2:mem:games;MODE=MYSQL;DB_CLOSE_DELAY=-1",
+                DataSourceUtil.USERNAME, DataSourceUtil.PASSWORD, 2, 1, null);
+        dataSource = new CountingDataSource(pool);
+        repo = new GameRepositoryJdbc(dataSource);
+        repo.createSchema();
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.createStatement().execute("drop all objects");
+        }
+        pool.close();
+    }
+
+    @Test
+    public void restore_the_whole_game() {
+
+        Game game = new Game(Deck.shuffled(42));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        game.pickCard("john");
+        game.keep("john");
+        game.pickCard("john");
+        game.discard("john");
+        game.pickCard("peter");
+        repo.update(game);
+
+        Game saved = repo.getById(game.getId());
+
+        assertThat(saved.getState(), is(Game.State.PLAYING));
+        assertThat(saved.getSeed(), is(42L));
+        assertThat(saved.getVersion(), is(game.getVersion()));
+        assertThat(saved.getDeck().getDeck(), is(game.getDeck().getDeck()));
+        Player john = saved.getPlayer("john");
+        assertThat(john.getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+        assertThat(john.getDiscardCounter(), is(1));
+        assertThat(john.getPickedCard(), is(nullValue()));
+        assertThat(saved.getPlayer("peter").getPickedCard(), is(game.getPlayer("peter").getPickedCard()));
+
+        // The restored game goes on from where it was saved
+        saved.keep("peter");
+        assertThat(saved.getPlayer("peter").getHand().handSize(), is(1));
+    }
+
+    @Test
+    public void write_only_the_changes_of_an_action() {
+
+        Game game = new Game(Deck.shuffled(7));
+        game.join("john");
+        game.join("peter");
+        repo.create(game);
+
+        dataSource.roundTrips.set(0);
+        game.pickCard("john");
+        repo.update(game);
+        // The version and deck size of the game, the row of the player and the event
+        assertThat(dataSource.roundTrips.get(), is(3L));
+
+        dataSource.roundTrips.set(0);
+        game.keep("john");
+        repo.update(game);
+        // The version of the game, the row of the player, one hand card and the event
+        assertThat(dataSource.roundTrips.get(), is(4L));
+
+        dataSource.roundTrips.set(0);
+        repo.update(game);
+        assertThat(dataSource.roundTrips.get(), is(0L));
+    }
+
+    @Test
+    public void clear_the_saved_hands_after_a_battle() {
+
+        Game game = new Game(Deck.shuffled(3));
+        game.join("john");
+        game.join("peter");
+        repo.create(game);
+        for (int i = 0; i < Game.HAND_SIZE; i++) {
+            game.pickCard("john");
+            game.keep("john");
+            game.pickCard("peter");
+            game.keep("peter");
+            repo.update(game);
+        }
+
+        Game saved = repo.getById(game.getId());
+
+        assertThat(saved.getRound(), is(1));
+        assertThat(saved.getPlayer("john").getHand().handSize(), is(0));
+        assertThat(saved.getPlayer("peter").getHand().handSize(), is(0));
+        assertThat(saved.getPlayer("john").getPoint() + saved.getPlayer("peter").getPoint(), is(game.getPlayer("john").getPoint() + game.getPlayer("peter").getPoint()));
+        assertThat(saved.getDeckSize(), is(game.getDeckSize()));
+    }
+
+    @Test
+    public void save_merged_copies_like_the_game_itself() {
+
+        Game game = new Game(Deck.shuffled(11));
+        game.join("john");
+        game.join("peter");
+        repo.create(game);
+
+        // Copies taken after each round of actions, none of them saved, as the write-behind repository does
+        Game merged = null;
+        for (int i = 0; i < Game.HAND_SIZE + 1; i++) {
+            game.pickCard("john");
+            game.keep("john");
+            game.pickCard("peter");
+            game.keep("peter");
+            Game copy = GameChanges.copy(game);
+            GameChanges.of(game).markSaved(game);
+            if (merged != null) {
+                GameChanges.of(copy).mergeOlder(GameChanges.of(merged));
+            }
+            merged = copy;
+        }
+        repo.update(merged);
+
+        Game saved = repo.getById(game.getId());
+
+        assertThat(saved.getRound(), is(1));
+        assertThat(saved.getPlayer("john").getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+        assertThat(saved.getPlayer("peter").getHand().getHand(), is(game.getPlayer("peter").getHand().getHand()));
+        assertThat(saved.getDeckSize(), is(game.getDeckSize()));
+    }
+
+    @Test
+    public void find_pages_of_games_after_an_id() {
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Game game = new Game(Deck.shuffled(i));
+            game.join("john" + i);
+            if (i % 3 == 0) {
+                game.join("peter" + i);
+            }
+            games.add(game);
+        }
+        repo.saveAll(games);
+
+        List<Game> page = repo.find(new GameSearch().setAfterId(games.get(9).getId()).setLimit(5));
+        assertThat(page.size(), is(5));
+        assertThat(page.get(0).getId(), is(games.get(10).getId()));
+        assertThat(page.get(0).getPlayerNames(), is(Arrays.asList("john10")));
+
+        List<Game> playing = repo.find(new GameSearch().setState(Game.State.PLAYING).setAfterId(games.get(0).getId()).setLimit(2));
+        assertThat(playing.get(0).getPlayerNames(), is(Arrays.asList("john3", "peter3")));
+        assertThat(playing.get(1).getPlayerNames(), is(Arrays.asList("john6", "peter6")));
+    }
+
+    @Test
+    public void stream_games_in_chunks() {
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Game game = new Game(Deck.shuffled(i));
+            game.join("john" + i);
+            games.add(game);
+        }
+        repo.saveAll(games);
+
+        dataSource.roundTrips.set(0);
+        try (Stream<Game> stream = repo.getAll()) {
+            List<Game> saved = stream.collect(Collectors.toList());
+
+            assertThat(saved.size(), is(600));
+            assertThat(saved.get(599).getPlayerNames(), is(Arrays.asList("john599")));
+            assertThat(saved.get(599).getDeckSize(), is(Card.COUNT));
+        }
+        // The games, then the players and hand cards of each chunk of 256 games
+        assertThat(dataSource.roundTrips.get(), is(1L + 3 * 2));
+    }
+
+    @Test
+    public void read_summaries_without_the_decks_and_hands() {
+
+        Game open = new Game(Deck.shuffled(1));
+        open.join("john");
+        Game playing = new Game(Deck.shuffled(2));
+        repo.saveAll(Arrays.asList(open, playing));
+        playing.join("mary");
+        playing.join("peter");
+        repo.update(playing);
+
+        dataSource.roundTrips.set(0);
+        List<GameSummary> summaries = repo.findSummaries(new GameSearch());
+
+        assertThat(summaries, is(Arrays.asList(GameSummary.of(open), GameSummary.of(playing))));
+        assertThat(repo.findSummaries(new GameSearch().setState(Game.State.PLAYING)), is(Arrays.asList(GameSummary.of(playing))));
+        // The games, then the player names of the chunk
+        assertThat(dataSource.roundTrips.get(), is(2L * 2));
+    }
+
+    @Test
+    public void search_by_player_and_creation_time_newest_first() {
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Game game = new Game(0, Deck.shuffled(i), (long) i, 1000 + i, Game.State.OPEN, 0, Collections.emptyList());
+            game.join(i % 2 == 0 ? "john" : "peter");
+            games.add(game);
+        }
+        repo.saveAll(games);
+
+        assertThat(ids(repo.findSummaries(new GameSearch().setPlayer("john").setNewestFirst(true).setLimit(2))),
+                is(Arrays.asList(games.get(4).getId(), games.get(2).getId())));
+        assertThat(ids(repo.findSummaries(new GameSearch().setPlayer("john").setNewestFirst(true).setAfterId(games.get(2).getId()))),
+                is(Arrays.asList(games.get(0).getId())));
+        assertThat(ids(repo.findSummaries(new GameSearch().setCreatedAfter(1002).setNewestFirst(true))),
+                is(Arrays.asList(games.get(5).getId(), games.get(4).getId(), games.get(3).getId())));
+        List<Game> found = repo.find(new GameSearch().setCreatedAfter(1002).setPlayer("peter"));
+        assertThat(found.get(0).getPlayerNames(), is(Arrays.asList("peter")));
+        assertThat(found.get(1).getCreated(), is(1005L));
+    }
+
+    private List<Long> ids(List<GameSummary> summaries) {
+        return summaries.stream().map(GameSummary::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void replay_the_game_at_any_saved_version() {
+
+        Game game = new Game(Deck.shuffled(13));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        repo.update(game);
+        Map<Long, Game> saved = new TreeMap<>();
+        while (game.getState() == Game.State.PLAYING) {
+            for (String name : Arrays.asList("john", "peter")) {
+                game.pickCard(name);
+                repo.update(game);
+                saved.put(game.getVersion(), game.copy());
+                game.keep(name);
+                repo.update(game);
+                saved.put(game.getVersion(), game.copy());
+            }
+        }
+
+        List<GameEvent> history = repo.getEvents(game.getId(), 0, Long.MAX_VALUE);
+        assertThat(history.size(), is((int) game.getVersion()));
+        assertThat(history.get(0).getPlayer(), is("john"));
+        assertThat(history.get(history.size() - 1).getType(), is(GameEvent.Type.BATTLE));
+        for (Game expected : saved.values()) {
+            Game replayed = repo.replay(game.getId(), expected.getVersion());
+            assertThat(replayed.getRound(), is(expected.getRound()));
+            assertThat(replayed.getDeckSize(), is(expected.getDeckSize()));
+            for (int slot = 0; slot < Game.MAXIMUM_PLAYER_NUM; slot++) {
+                Player player = replayed.getPlayer(slot);
+                assertThat(player.getHand().getHand(), is(expected.getPlayer(slot).getHand().getHand()));
+                assertThat(player.getPickedCard(), is(expected.getPlayer(slot).getPickedCard()));
+                assertThat(player.getPoint(), is(expected.getPlayer(slot).getPoint()));
+            }
+        }
+        assertThat(repo.replay(game.getId(), game.getVersion() + 1), is(nullValue()));
+    }
+}
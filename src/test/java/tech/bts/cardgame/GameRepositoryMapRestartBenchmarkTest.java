@@ -0,0 +1,70 @@
+package tech.bts.cardgame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+/**
+ * Times the restart of the memory repository from its data directory: from the journal alone after a crash, and from
+ * the snapshot written when it's closed. 100 000 games by default; e.g. run with -Dcardgame.benchmark.games=1000000
+ * for a million.
+ */
+public class GameRepositoryMapRestartBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restart_the_memory_repository() throws Exception {
+
+        int count = Integer.getInteger("cardgame.benchmark.games", 100_000);
+        Path directory = folder.getRoot().toPath();
+
+        write(directory, count);
+        // Not closed: the next start reads the whole journal
+
+        long journalMillis = restartMillis("journal", directory, count);
+        // Closed: the next start reads the snapshot
+        long snapshotMillis = restartMillis("snapshot", directory, count);
+
+        assertThat(journalMillis, is(lessThan(10_000L)));
+        assertThat(snapshotMillis, is(lessThan(10_000L)));
+    }
+
+    private void write(Path directory, int count) {
+        GameRepositoryMap repo = open(directory);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Game game = new Game(new Deck());
+            repo.create(game);
+            game.join("player" + i);
+            game.join("player" + (i + 1));
+            repo.update(game);
+        }
+        System.out.printf("memory, %d games: written in %d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long restartMillis(String from, Path directory, int count) {
+        long start = System.nanoTime();
+        GameRepositoryMap restarted = open(directory);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("memory, %d games: restarted from the %s in %d ms%n", count, from, millis);
+        assertThat(restarted.getAll().count(), is((long) count));
+        assertThat(restarted.findByPlayer("player" + count).size(), is(1));
+        restarted.close();
+        return millis;
+    }
+
+    private GameRepositoryMap open(Path directory) {
+        return new GameRepositoryMap(directory, 64 << 20, GameRepositoryMap.SyncPolicy.NEVER, 0, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,294 @@
+package tech.bts.cardgame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameRepositoryMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void find_games_by_state_after_they_change() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game g1 = new Game(new Deck());
+        Game g2 = new Game(new Deck());
+        repo.create(g1);
+        repo.create(g2);
+
+        g1.join("john");
+        g1.join("peter");
+        repo.update(g1);
+
+        assertThat(repo.findByState(Game.State.OPEN), is(Arrays.asList(g2)));
+        assertThat(repo.findByState(Game.State.PLAYING), is(Arrays.asList(g1)));
+    }
+
+    @Test
+    public void find_games_by_player() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game g1 = new Game(new Deck());
+        Game g2 = new Game(new Deck());
+        repo.create(g1);
+        repo.create(g2);
+
+        g1.join("john");
+        repo.update(g1);
+        g2.join("peter");
+        g2.join("john");
+        repo.update(g2);
+
+        assertThat(repo.findByPlayer("john"), is(Arrays.asList(g1, g2)));
+        assertThat(repo.findByPlayer("peter"), is(Arrays.asList(g2)));
+        assertThat(repo.findByPlayer("mary").isEmpty(), is(true));
+    }
+
+    @Test
+    public void find_pages_of_games_after_an_id() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game[] games = new Game[5];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new Game(new Deck());
+            repo.create(games[i]);
+        }
+        games[1].join("john");
+        games[1].join("peter");
+        repo.update(games[1]);
+
+        assertThat(repo.find(new GameSearch().setLimit(2)), is(Arrays.asList(games[0], games[1])));
+        assertThat(repo.find(new GameSearch().setAfterId(games[1].getId()).setLimit(2)), is(Arrays.asList(games[2], games[3])));
+        assertThat(repo.find(new GameSearch().setState(Game.State.OPEN).setAfterId(games[0].getId())),
+                is(Arrays.asList(games[2], games[3], games[4])));
+    }
+
+    @Test
+    public void keep_the_summaries_up_to_date() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game g1 = new Game(new Deck());
+        Game g2 = new Game(new Deck());
+        repo.create(g1);
+        repo.create(g2);
+
+        g1.join("john");
+        g1.join("peter");
+        repo.update(g1);
+
+        assertThat(repo.findSummaries(new GameSearch()), is(Arrays.asList(
+                new GameSummary(g1.getId(), Game.State.PLAYING, Arrays.asList("john", "peter"), g1.getCreated()),
+                new GameSummary(g2.getId(), Game.State.OPEN, Collections.emptyList(), g2.getCreated()))));
+        assertThat(repo.findSummaries(new GameSearch().setState(Game.State.OPEN)), is(Arrays.asList(GameSummary.of(g2))));
+    }
+
+    @Test
+    public void search_by_player_and_creation_time_newest_first() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game[] games = new Game[6];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new Game(0, new Deck(), null, 1000 + i, Game.State.OPEN, 0, Collections.emptyList());
+            games[i].join(i % 2 == 0 ? "john" : "peter");
+            repo.create(games[i]);
+        }
+
+        assertThat(repo.find(new GameSearch().setPlayer("john").setNewestFirst(true).setLimit(2)), is(Arrays.asList(games[4], games[2])));
+        assertThat(repo.find(new GameSearch().setPlayer("john").setNewestFirst(true).setAfterId(games[2].getId())), is(Arrays.asList(games[0])));
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1002).setNewestFirst(true)), is(Arrays.asList(games[5], games[4], games[3])));
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1002).setPlayer("peter")), is(Arrays.asList(games[3], games[5])));
+    }
+
+    @Test
+    public void search_by_creation_time_when_the_clock_went_back() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        long[] created = {1000, 1005, 1003, 1001, 1006, 1002};
+        Game[] games = new Game[created.length];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new Game(0, new Deck(), null, created[i], Game.State.OPEN, 0, Collections.emptyList());
+            repo.create(games[i]);
+        }
+
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1002)), is(Arrays.asList(games[1], games[2], games[4])));
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1000).setLimit(2)), is(Arrays.asList(games[1], games[2])));
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1004).setNewestFirst(true)), is(Arrays.asList(games[4], games[1])));
+        assertThat(repo.find(new GameSearch().setCreatedAfter(1006)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void keep_the_events_of_the_latest_versions_of_a_game() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game game = new Game(new Deck());
+        repo.create(game);
+        for (int i = 0; i < 2 * GameRepositoryMap.LOGGED_VERSIONS; i++) {
+            game.setState(i % 2 == 0 ? Game.State.PLAYING : Game.State.OPEN);
+            repo.update(game);
+        }
+        long version = game.getVersion();
+
+        assertThat(repo.getEvents(game.getId(), 0, version).size(), is(GameRepositoryMap.LOGGED_VERSIONS));
+        assertThat(repo.replay(game.getId(), version - GameRepositoryMap.LOGGED_VERSIONS - 1), is(nullValue()));
+        assertThat(repo.replay(game.getId(), version - GameRepositoryMap.LOGGED_VERSIONS + 1), is(notNullValue()));
+        assertThat(repo.replay(game.getId(), version).getState(), is(game.getState()));
+        assertThat(repo.replay(game.getId(), version - 1).getState(), is(Game.State.PLAYING));
+    }
+
+    @Test
+    public void drop_the_event_log_of_a_finished_game() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+        Game game = new Game(Deck.shuffled(1));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        repo.update(game);
+        assertThat(repo.getEvents(game.getId(), 0, game.getVersion()).size(), is(2));
+
+        game.setState(Game.State.FINISHED);
+        repo.update(game);
+
+        assertThat(repo.getEvents(game.getId(), 0, game.getVersion()).isEmpty(), is(true));
+        assertThat(repo.replay(game.getId(), game.getVersion() - 1), is(nullValue()));
+        assertThat(repo.getById(game.getId()).getState(), is(Game.State.FINISHED));
+    }
+
+    @Test
+    public void give_different_ids_when_creating_from_many_threads() {
+
+        GameRepositoryMap repo = new GameRepositoryMap();
+
+        IntStream.range(0, 10_000).parallel().forEach(i -> repo.create(new Game(new Deck())));
+
+        Set<Long> ids = new HashSet<>();
+        repo.getAll().forEach(game -> ids.add(game.getId()));
+        assertThat(ids.size(), is(10_000));
+        assertThat(repo.findByState(Game.State.OPEN).size(), is(10_000));
+    }
+
+    @Test
+    public void recover_the_games_after_a_crash() throws Exception {
+
+        Path directory = folder.getRoot().toPath();
+        GameRepositoryMap crashed = durable(directory, 1 << 20);
+        Game g1 = new Game(Deck.shuffled(1));
+        Game g2 = new Game(Deck.shuffled(2));
+        crashed.create(g1);
+        crashed.create(g2);
+        g1.join("john");
+        g1.join("peter");
+        g1.pickCard("john");
+        crashed.update(g1);
+        // Not closed: the games are only in the journal
+
+        try (GameRepositoryMap restarted = durable(directory, 1 << 20)) {
+            Game saved = restarted.getById(g1.getId());
+            assertThat(saved.getPlayerNames(), is(Arrays.asList("john", "peter")));
+            assertThat(saved.getPlayer("john").getPickedCard(), is(g1.getPlayer("john").getPickedCard()));
+            assertThat(saved.getDeckSize(), is(g1.getDeckSize()));
+            assertThat(saved.getVersion(), is(g1.getVersion()));
+            assertThat(restarted.findByPlayer("peter").size(), is(1));
+            assertThat(restarted.findByState(Game.State.OPEN).get(0).getId(), is(g2.getId()));
+
+            Game g3 = new Game(new Deck());
+            restarted.create(g3);
+            assertThat(g3.getId(), is(g2.getId() + 1));
+        }
+    }
+
+    @Test
+    public void snapshot_the_games_and_delete_the_journal_before() throws Exception {
+
+        Path directory = folder.getRoot().toPath();
+        GameRepositoryMap repo = durable(directory, 4096);
+        Game[] games = new Game[20];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new Game(Deck.shuffled(i));
+            repo.create(games[i]);
+            games[i].join("john" + i);
+            repo.update(games[i]);
+        }
+        repo.snapshot();
+        assertThat(repo.journalSegments(), is(1));
+
+        // Updates after the snapshot are read from the journal
+        games[3].join("peter");
+        repo.update(games[3]);
+
+        GameRepositoryMap restarted = durable(directory, 4096);
+        assertThat(restarted.getAll().count(), is(20L));
+        assertThat(restarted.getById(games[3].getId()).getState(), is(Game.State.PLAYING));
+        assertThat(restarted.getById(games[19].getId()).getPlayerNames(), is(Arrays.asList("john19")));
+        restarted.close();
+
+        // Closing writes a snapshot, which the next start reads alone
+        assertThat(Files.list(directory).filter(file -> file.toString().endsWith(".snapshot")).count(), is(1L));
+        try (GameRepositoryMap again = durable(directory, 4096)) {
+            assertThat(again.findByState(Game.State.PLAYING).get(0).getId(), is(games[3].getId()));
+        }
+    }
+
+    @Test
+    public void recover_up_to_a_torn_record() throws Exception {
+
+        Path directory = folder.getRoot().toPath();
+        GameRepositoryMap crashed = durable(directory, 1 << 20);
+        Game game = new Game(Deck.shuffled(1));
+        crashed.create(game);
+        game.join("john");
+        crashed.update(game);
+        game.join("peter");
+        crashed.update(game);
+        breakLastRecord(directory);
+
+        try (GameRepositoryMap restarted = durable(directory, 1 << 20)) {
+            assertThat(restarted.getById(game.getId()).getPlayerNames(), is(Arrays.asList("john")));
+            // The journal goes on after the last whole record
+            Game recovered = restarted.getById(game.getId());
+            recovered.join("mary");
+            restarted.update(recovered);
+            assertThat(restarted.findByPlayer("mary").size(), is(1));
+        }
+    }
+
+    private GameRepositoryMap durable(Path directory, long segmentBytes) {
+        return new GameRepositoryMap(directory, segmentBytes, GameRepositoryMap.SyncPolicy.NEVER, 0, Long.MAX_VALUE);
+    }
+
+    /** Changes a byte of the last record of the journal, as if the process died while writing it. */
+    private void breakLastRecord(Path directory) throws IOException {
+        Path segment = Files.list(directory).filter(file -> file.toString().endsWith(".journal")).sorted()
+                .collect(Collectors.toList()).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int last = 0;
+        while (buffer.remaining() >= 8 && buffer.getInt(buffer.position()) > 0) {
+            last = buffer.position();
+            buffer.position(last + 8 + buffer.getInt(last));
+        }
+        bytes[last + 8 + 20] ^= 1;
+        Files.write(segment, bytes);
+    }
+}
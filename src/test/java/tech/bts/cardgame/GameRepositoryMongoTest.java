@@ -0,0 +1,188 @@
+package tech.bts.cardgame;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameRepositoryMongo;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameRepositoryMongoTest {
+
+    private MongoServer server;
+    private MongoClient client;
+    private MongoDatabase database;
+    private GameRepositoryMongo repo;
+
+    @Before
+    public void startServer() {
+        server = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = server.bind();
+        client = MongoClients.create("mongodb://" + address.getHostString() + ":" + address.getPort());
+        database = client.getDatabase("cardgame");
+        repo = new GameRepositoryMongo(database);
+    }
+
+    @After
+    public void stopServer() {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void restore_the_whole_game() {
+
+        Game game = new Game(Deck.shuffled(42));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        game.pickCard("john");
+        game.keep("john");
+        game.pickCard("john");
+        game.discard("john");
+        game.pickCard("peter");
+        repo.update(game);
+
+        Game saved = repo.getById(game.getId());
+
+        assertThat(saved.getId(), is(game.getId()));
+        assertThat(saved.getState(), is(Game.State.PLAYING));
+        assertThat(saved.getSeed(), is(42L));
+        assertThat(saved.getVersion(), is(game.getVersion()));
+        assertThat(saved.getCreated(), is(game.getCreated()));
+        assertThat(saved.getDeck().getDeck(), is(game.getDeck().getDeck()));
+        Player john = saved.getPlayer("john");
+        assertThat(john.getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+        assertThat(john.getDiscardCounter(), is(1));
+        assertThat(john.getPickedCard(), is(nullValue()));
+        assertThat(saved.getPlayer("peter").getPickedCard(), is(game.getPlayer("peter").getPickedCard()));
+
+        saved.keep("peter");
+        assertThat(saved.getPlayer("peter").getHand().handSize(), is(1));
+        assertThat(repo.getById(12345), is(nullValue()));
+    }
+
+    @Test
+    public void set_only_the_changes_of_an_action() {
+
+        Game game = new Game(Deck.shuffled(7));
+        game.join("john");
+        game.join("peter");
+        repo.create(game);
+
+        // Changed behind the repository's back, so a field written again would lose the change
+        database.getCollection("games").updateOne(new Document("_id", game.getId()), new Document("$set", new Document("round", 99)));
+        game.pickCard("john");
+        game.keep("john");
+        repo.update(game);
+
+        Game saved = repo.getById(game.getId());
+        assertThat(saved.getRound(), is(99));
+        assertThat(saved.getDeckSize(), is(game.getDeckSize()));
+        assertThat(saved.getPlayer("john").getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+    }
+
+    @Test
+    public void save_many_games_with_consecutive_ids() {
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Game game = new Game(Deck.shuffled(i));
+            game.join("john" + i);
+            games.add(game);
+        }
+        repo.saveAll(games);
+        games.get(3).join("peter");
+        Game created = new Game(Deck.shuffled(10));
+        repo.saveAll(Arrays.asList(games.get(3), created));
+
+        assertThat(games.get(9).getId(), is(games.get(0).getId() + 9));
+        assertThat(created.getId(), is(games.get(9).getId() + 1));
+        try (Stream<Game> stream = repo.getAll()) {
+            List<Game> saved = stream.collect(Collectors.toList());
+
+            assertThat(saved.size(), is(11));
+            assertThat(saved.get(3).getPlayerNames(), is(Arrays.asList("john3", "peter")));
+            assertThat(saved.get(3).getState(), is(Game.State.PLAYING));
+        }
+    }
+
+    @Test
+    public void search_summaries_and_games() {
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Game game = new Game(Deck.shuffled(i));
+            game.join(i % 2 == 0 ? "john" : "peter");
+            games.add(game);
+        }
+        games.get(4).join("mary");
+        repo.saveAll(games);
+
+        assertThat(repo.findSummaries(new GameSearch().setPlayer("john").setNewestFirst(true).setLimit(2)),
+                is(Arrays.asList(GameSummary.of(games.get(4)), GameSummary.of(games.get(2)))));
+        assertThat(repo.findSummaries(new GameSearch().setState(Game.State.PLAYING)), is(Arrays.asList(GameSummary.of(games.get(4)))));
+        List<Game> page = repo.find(new GameSearch().setPlayer("peter").setAfterId(games.get(1).getId()));
+        assertThat(page.stream().map(Game::getId).collect(Collectors.toList()), is(Arrays.asList(games.get(3).getId(), games.get(5).getId())));
+    }
+
+    @Test
+    public void replay_the_game_at_any_saved_version() {
+
+        Game game = new Game(Deck.shuffled(13));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        repo.update(game);
+        Map<Long, Game> saved = new TreeMap<>();
+        while (game.getState() == Game.State.PLAYING) {
+            for (String name : Arrays.asList("john", "peter")) {
+                game.pickCard(name);
+                repo.update(game);
+                saved.put(game.getVersion(), game.copy());
+                game.keep(name);
+                repo.update(game);
+                saved.put(game.getVersion(), game.copy());
+            }
+        }
+
+        List<GameEvent> history = repo.getEvents(game.getId(), 0, Long.MAX_VALUE);
+        assertThat(history.size(), is((int) game.getVersion()));
+        assertThat(history.get(0).getPlayer(), is("john"));
+        assertThat(history.get(history.size() - 1).getType(), is(GameEvent.Type.BATTLE));
+        for (Game expected : saved.values()) {
+            Game replayed = repo.replay(game.getId(), expected.getVersion());
+            assertThat(replayed.getRound(), is(expected.getRound()));
+            assertThat(replayed.getDeckSize(), is(expected.getDeckSize()));
+            for (int slot = 0; slot < Game.MAXIMUM_PLAYER_NUM; slot++) {
+                Player player = replayed.getPlayer(slot);
+                assertThat(player.getHand().getHand(), is(expected.getPlayer(slot).getHand().getHand()));
+                assertThat(player.getPickedCard(), is(expected.getPlayer(slot).getPickedCard()));
+                assertThat(player.getPoint(), is(expected.getPlayer(slot).getPoint()));
+            }
+        }
+        assertThat(repo.replay(game.getId(), game.getVersion() + 1), is(nullValue()));
+    }
+}
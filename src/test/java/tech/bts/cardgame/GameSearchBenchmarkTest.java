@@ -0,0 +1,110 @@
+package tech.bts.cardgame;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameRepository;
+import tech.bts.cardgame.repository.GameRepositoryJdbc;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.util.DataSourceUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+/**
+ * Times the lobby searches (open games, games of a player, games created after a time) on many stored games: a million
+ * in memory and 100 000 in H2 by default, which keeps its in-memory database in the same heap. Runs with the benchmark
+ * profile (mvn test -Pbenchmark); e.g. -Dcardgame.benchmark.games=1000000 for a million in both, with a bigger heap.
+ */
+public class GameSearchBenchmarkTest {
+
+    private static final int QUERIES = 1_000;
+    private static final long FIRST_CREATED = 1_500_000_000_000L;
+
+    @Test
+    public void search_the_memory_repository() {
+
+        int count = Integer.getInteger("cardgame.benchmark.games", 1_000_000);
+        GameRepositoryMap repo = new GameRepositoryMap();
+        for (Game game : games(count)) {
+            repo.create(game);
+        }
+
+        assertThat(searchMicros("memory", repo, count), is(lessThan(1000.0)));
+    }
+
+    @Test
+    public void search_the_jdbc_repository() throws SQLException {
+
+        int count = Integer.getInteger("cardgame.benchmark.games", 100_000);
+        HikariDataSource pool = DataSourceUtil.createPool("jdbc:h2:mem:search;MODE=MYSQL;DB_CLOSE_DELAY=-1",
+                DataSourceUtil.USERNAME, DataSourceUtil.PASSWORD, 2, 1, null);
+        try {
+            GameRepositoryJdbc repo = new GameRepositoryJdbc(pool);
+            repo.createSchema();
+            List<Game> games = games(count);
+            for (int i = 0; i < count; i += 5_000) {
+                repo.saveAll(games.subList(i, Math.min(i + 5_000, count)));
+            }
+
+            assertThat(searchMicros("jdbc", repo, count), is(lessThan(1000.0)));
+        } finally {
+            try (Connection connection = pool.getConnection()) {
+                connection.createStatement().execute("drop all objects");
+            }
+            pool.close();
+        }
+    }
+
+    /** Runs the searches and returns the slowest average time of one, in microseconds. */
+    private double searchMicros(String name, GameRepository repo, int count) {
+
+        List<GameSearch> searches = Arrays.asList(
+                new GameSearch().setState(Game.State.OPEN).setLimit(20),
+                new GameSearch().setPlayer("player" + (count / 2)).setLimit(20),
+                new GameSearch().setCreatedAfter(FIRST_CREATED + count - 200).setNewestFirst(true).setLimit(20),
+                // Every game matches: a page must not read them all
+                new GameSearch().setCreatedAfter(FIRST_CREATED).setLimit(20));
+        double slowest = 0;
+        for (GameSearch search : searches) {
+            // Warm up, then time
+            for (int i = 0; i < QUERIES; i++) {
+                assertThat(repo.findSummaries(search).isEmpty(), is(false));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                repo.findSummaries(search);
+            }
+            double micros = (System.nanoTime() - start) / 1000.0 / QUERIES;
+            System.out.printf("%s, %d games: state %s, player %s, created after %d: %.1f µs%n", name, count,
+                    search.getState(), search.getPlayer(), search.getCreatedAfter(), micros);
+            slowest = Math.max(slowest, micros);
+        }
+        return slowest;
+    }
+
+    /** Games created a millisecond apart; a third of them open, each player in two of them. */
+    private List<Game> games(int count) {
+        List<Game> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Game game = new Game(0, new Deck(), null, FIRST_CREATED + i, Game.State.OPEN, 0, Collections.<Player>emptyList());
+            game.join("player" + i);
+            if (i % 3 != 0) {
+                game.join("player" + (i + 1));
+            }
+            games.add(game);
+        }
+        return games;
+    }
+}
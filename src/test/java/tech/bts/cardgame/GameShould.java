@@ -5,6 +5,9 @@ import tech.bts.cardgame.exception.*;
 import tech.bts.cardgame.model.Card;
 import tech.bts.cardgame.model.Deck;
 import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.Player;
+import tech.bts.cardgame.repository.GameChanges;
 
 import java.util.*;
 
@@ -78,6 +81,14 @@ public class GameShould {
         g.join("mary");
     }
 
+    @Test(expected = UsernameTooLongException.class)
+    public void not_allow_joining_with_a_name_too_long_to_store() {
+
+        Game g = new Game(new Deck());
+
+        g.join(String.join("", Collections.nCopies(Game.MAXIMUM_NAME_LENGTH + 1, "a")));
+    }
+
     @Test
     public void allow_picking_cards_when_playing() {
 
@@ -369,5 +380,63 @@ public class GameShould {
         assertThat(g.getPlayer("john").getPoint(), is(0));
         assertThat(g.getPlayer("peter").getPoint(), is(1));
     }
-}
 
+    @Test
+    public void grow_the_version_on_every_change() {
+
+        Game g = new Game(Deck.shuffled(1));
+        long created = g.getVersion();
+        g.join("john");
+        long joined = g.getVersion();
+        g.join("peter");
+        g.pickCard("john");
+        long picked = g.getVersion();
+
+        assertThat(joined > created, is(true));
+        assertThat(picked > joined, is(true));
+        assertThat(g.copy().getVersion(), is(picked));
+    }
+
+    @Test
+    public void record_one_event_per_version_and_replay_them() {
+
+        Game g = new Game(Deck.shuffled(8));
+        g.join("john");
+        g.join("peter");
+        GameChanges changes = GameChanges.saved(g);
+        Game start = g.copy();
+        while (g.getState() == Game.State.PLAYING) {
+            // The second discard of the first round fills the hand of john by itself
+            int discards = g.getRound() == 0 ? Game.MAXIMUM_DISCARD : 1;
+            for (int i = 0; i < discards; i++) {
+                g.pickCard("john");
+                g.discard("john");
+            }
+            for (int i = 0; i < Game.HAND_SIZE && g.getState() == Game.State.PLAYING; i++) {
+                if (g.getPlayer("john").getHand().handSize() < Game.HAND_SIZE) {
+                    g.pickCard("john");
+                    g.keep("john");
+                }
+                g.pickCard("peter");
+                g.keep("peter");
+            }
+        }
+
+        List<GameEvent> events = changes.getEvents(g);
+        assertThat(events.size(), is((int) (g.getVersion() - start.getVersion())));
+        assertThat(events.stream().filter(event -> event.getType() == GameEvent.Type.BATTLE).count(), is((long) g.getRound()));
+
+        for (GameEvent event : events) {
+            start.apply(event);
+        }
+        assertThat(start.getVersion(), is(g.getVersion()));
+        assertThat(start.getState(), is(Game.State.FINISHED));
+        assertThat(start.getRound(), is(g.getRound()));
+        assertThat(start.getDeckSize(), is(g.getDeckSize()));
+        for (int slot = 0; slot < Game.MAXIMUM_PLAYER_NUM; slot++) {
+            Player replayed = start.getPlayer(slot);
+            assertThat(replayed.getPoint(), is(g.getPlayer(slot).getPoint()));
+            assertThat(replayed.getHand().getHand(), is(g.getPlayer(slot).getHand().getHand()));
+        }
+    }
+}
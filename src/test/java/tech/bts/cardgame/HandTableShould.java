@@ -0,0 +1,59 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.model.Card;
+import tech.bts.cardgame.model.Hand;
+import tech.bts.cardgame.model.HandTable;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class HandTableShould {
+
+    @Test
+    public void give_every_hand_a_different_key() {
+
+        boolean[] used = new boolean[HandTable.HANDS];
+        for (int c = 2; c < Card.COUNT; c++) {
+            for (int b = 1; b < c; b++) {
+                for (int a = 0; a < b; a++) {
+                    int key = HandTable.key(c, a, b);
+                    assertFalse(used[key]);
+                    used[key] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void store_the_totals_of_the_hand() {
+
+        Hand hand = new Hand().keep(new Card(2, 7, 1)).keep(new Card(8, 1, 1)).keep(new Card(5, 1, 4));
+        int key = HandTable.key(hand);
+
+        Card totals = hand.calculate();
+        assertThat(HandTable.getMagicPoint(key), is(totals.getMagicPoint()));
+        assertThat(HandTable.getStrengthPoint(key), is(totals.getStrengthPoint()));
+        assertThat(HandTable.getIntelligencePoint(key), is(totals.getIntelligencePoint()));
+    }
+
+    @Test
+    public void give_the_same_battle_result_as_comparing_totals() {
+
+        Hand john = new Hand().keep(new Card(2, 7, 1)).keep(new Card(8, 1, 1)).keep(new Card(5, 1, 4));
+        Hand peter = new Hand().keep(new Card(4, 3, 3)).keep(new Card(5, 2, 3)).keep(new Card(3, 5, 2));
+
+        assertThat(HandTable.battle(HandTable.key(john), HandTable.key(peter)), is(-1));
+        assertThat(HandTable.battle(HandTable.key(peter), HandTable.key(john)), is(1));
+        assertThat(HandTable.battle(HandTable.key(john), HandTable.key(john)), is(0));
+    }
+
+    @Test
+    public void rate_balanced_hands_stronger_than_unbalanced_ones() {
+
+        Hand balanced = new Hand().keep(new Card(4, 3, 3)).keep(new Card(3, 4, 3)).keep(new Card(3, 3, 4));
+        Hand unbalanced = new Hand().keep(new Card(8, 1, 1)).keep(new Card(7, 1, 2)).keep(new Card(7, 2, 1));
+
+        assertTrue(HandTable.getStrength(HandTable.key(balanced)) > HandTable.getStrength(HandTable.key(unbalanced)));
+    }
+}
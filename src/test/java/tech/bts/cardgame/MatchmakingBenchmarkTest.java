@@ -0,0 +1,89 @@
+package tech.bts.cardgame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.service.DeckPool;
+import tech.bts.cardgame.service.GameCache;
+import tech.bts.cardgame.service.GameEvents;
+import tech.bts.cardgame.service.GameService;
+import tech.bts.cardgame.service.MatchmakingService;
+import tech.bts.cardgame.service.TurnTimeouts;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Players paired per second when 8 threads queue at once. 16 000 players by default; e.g. run with
+ * -Dcardgame.benchmark.players=1000000 for a million.
+ */
+public class MatchmakingBenchmarkTest {
+
+    private static final int THREADS = 8;
+
+    private final GameRepositoryMap repo = new GameRepositoryMap();
+    private final GameEvents events = new GameEvents(new ObjectMapper(), 60_000, 64, 10_000, 1);
+    private final TurnTimeouts timeouts = new TurnTimeouts(0, 0, 100);
+    private final GameService gameService = new GameService(repo, new DeckPool(0),
+            new GameCache(repo, 100_000, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), System::nanoTime),
+            events, timeouts, 4, 32);
+    private final MatchmakingService matchmaking = new MatchmakingService(gameService, 2);
+
+    @After
+    public void close() {
+        matchmaking.close();
+        gameService.close();
+        events.close();
+        timeouts.close();
+    }
+
+    @Test
+    public void pair_players_from_many_threads() throws Exception {
+
+        int playersPerThread = Integer.getInteger("cardgame.benchmark.players", 16_000) / THREADS;
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<CompletableFuture<Long>>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(threads.submit(() -> {
+                start.await();
+                List<CompletableFuture<Long>> gameIds = new ArrayList<>();
+                for (int i = 0; i < playersPerThread; i++) {
+                    gameIds.add(matchmaking.enqueue("player" + thread + "-" + i));
+                }
+                return gameIds;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+
+        Set<Long> games = new HashSet<>();
+        for (Future<List<CompletableFuture<Long>>> result : results) {
+            for (CompletableFuture<Long> gameId : result.get()) {
+                games.add(gameId.get(60, TimeUnit.SECONDS));
+            }
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        threads.shutdown();
+        int players = THREADS * playersPerThread;
+        System.out.printf("matchmaking: %d players in %.3f s (%.0f players/s), %s%n",
+                players, seconds, players / seconds, matchmaking.getMetrics());
+
+        assertThat(games.size(), is(players / Game.MAXIMUM_PLAYER_NUM));
+    }
+}
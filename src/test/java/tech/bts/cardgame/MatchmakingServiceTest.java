@@ -0,0 +1,113 @@
+package tech.bts.cardgame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import tech.bts.cardgame.exception.UsernameTooLongException;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.service.DeckPool;
+import tech.bts.cardgame.service.GameCache;
+import tech.bts.cardgame.service.GameEvents;
+import tech.bts.cardgame.service.GameService;
+import tech.bts.cardgame.service.MatchmakingService;
+import tech.bts.cardgame.service.TurnTimeouts;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class MatchmakingServiceTest {
+
+    private static final int THREADS = 4;
+    private static final int PLAYERS_PER_THREAD = 250;
+
+    private final GameRepositoryMap repo = new GameRepositoryMap();
+    private final GameEvents events = new GameEvents(new ObjectMapper(), 60_000, 64, 10_000, 1);
+    private final TurnTimeouts timeouts = new TurnTimeouts(0, 0, 100);
+    private final GameService gameService = new GameService(repo, new DeckPool(0),
+            new GameCache(repo, 100_000, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), System::nanoTime),
+            events, timeouts, 4, 32);
+    private final MatchmakingService matchmaking = new MatchmakingService(gameService, 2);
+
+    @After
+    public void close() {
+        matchmaking.close();
+        gameService.close();
+        events.close();
+        timeouts.close();
+    }
+
+    @Test
+    public void wait_for_another_player() throws Exception {
+
+        CompletableFuture<Long> john = matchmaking.enqueue("john");
+        // Asking again keeps the same place
+        assertThat(matchmaking.enqueue("john"), is(sameInstance(john)));
+        Thread.sleep(50);
+        assertThat(john.isDone(), is(false));
+
+        long gameId = matchmaking.enqueue("peter").get(5, TimeUnit.SECONDS);
+
+        assertThat(john.get(5, TimeUnit.SECONDS), is(gameId));
+        Game game = gameService.getGameById(gameId);
+        assertThat(game.getState(), is(Game.State.PLAYING));
+        assertThat(game.getPlayer("john"), is(notNullValue()));
+        assertThat(game.getPlayer("peter"), is(notNullValue()));
+        // Created with its players: it was never open to anyone else
+        assertThat(repo.findByState(Game.State.OPEN).isEmpty(), is(true));
+    }
+
+    @Test(expected = UsernameTooLongException.class)
+    public void refuse_a_name_too_long_before_pairing_it() {
+
+        matchmaking.enqueue(String.join("", Collections.nCopies(Game.MAXIMUM_NAME_LENGTH + 1, "a")));
+    }
+
+    @Test
+    public void pair_many_players_from_many_threads() throws Exception {
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<CompletableFuture<Long>>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(threads.submit(() -> {
+                start.await();
+                List<CompletableFuture<Long>> gameIds = new ArrayList<>();
+                for (int i = 0; i < PLAYERS_PER_THREAD; i++) {
+                    gameIds.add(matchmaking.enqueue("player" + thread + "-" + i));
+                }
+                return gameIds;
+            }));
+        }
+        start.countDown();
+
+        Map<Long, Integer> playersByGame = new HashMap<>();
+        for (Future<List<CompletableFuture<Long>>> result : results) {
+            for (CompletableFuture<Long> gameId : result.get()) {
+                playersByGame.merge(gameId.get(10, TimeUnit.SECONDS), 1, Integer::sum);
+            }
+        }
+        threads.shutdown();
+
+        assertThat(playersByGame.size(), is(THREADS * PLAYERS_PER_THREAD / Game.MAXIMUM_PLAYER_NUM));
+        for (Map.Entry<Long, Integer> game : playersByGame.entrySet()) {
+            assertThat(game.getValue(), is(Game.MAXIMUM_PLAYER_NUM));
+            assertThat(repo.getById(game.getKey()).getState(), is(Game.State.PLAYING));
+        }
+        assertThat(matchmaking.getMetrics().get("waiting"), is(0));
+    }
+}
@@ -0,0 +1,38 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.simulation.SimulationStats;
+import tech.bts.cardgame.simulation.Simulator;
+import tech.bts.cardgame.simulation.Strategy;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Games per second of the simulator on 1, 2, ... up to all the processors, to see how it scales. A million games by
+ * default; e.g. run with -Dcardgame.benchmark.games=10000000 for ten million.
+ */
+public class SimulatorBenchmarkTest {
+
+    @Test
+    public void simulate_on_more_and_more_cores() {
+
+        long games = Long.getLong("cardgame.benchmark.games", 1_000_000);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                Simulator simulator = new Simulator(Strategy.threshold(6), Strategy.random(0.5), pool);
+                // Warm up, then time
+                simulator.run(games / 10, 1);
+                SimulationStats stats = simulator.run(games, 2);
+                System.out.printf("simulator, %d games on %d threads: %.0f games/s%n", games, threads, stats.getGamesPerSecond());
+                assertThat(stats.getGames(), is(games));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.simulation.SimulationStats;
+import tech.bts.cardgame.simulation.Simulator;
+import tech.bts.cardgame.simulation.Strategy;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SimulatorTest {
+
+    @Test
+    public void play_every_game_to_the_end() {
+
+        Simulator simulator = new Simulator(Strategy.random(0.5), Strategy.alwaysKeep());
+
+        SimulationStats stats = simulator.run(2_000, 7);
+
+        assertThat(stats.getGames(), is(2_000L));
+        assertThat(stats.getFirstWins() + stats.getSecondWins() + stats.getGameDraws(), is(2_000L));
+        assertThat(stats.getExhaustedDecks(), is(0L));
+        assertTrue(stats.getRounds() >= stats.getGames());
+    }
+
+    @Test
+    public void give_the_same_results_for_the_same_seed() {
+
+        Simulator simulator = new Simulator(Strategy.threshold(6), Strategy.random(0.7));
+
+        SimulationStats stats1 = simulator.run(2_000, 42);
+        SimulationStats stats2 = simulator.run(2_000, 42);
+
+        assertThat(stats1.getFirstWins(), is(stats2.getFirstWins()));
+        assertThat(stats1.getRounds(), is(stats2.getRounds()));
+        assertThat(stats1.getRoundDraws(), is(stats2.getRoundDraws()));
+    }
+}
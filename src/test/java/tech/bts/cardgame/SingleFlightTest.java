@@ -0,0 +1,131 @@
+package tech.bts.cardgame;
+
+import org.junit.Test;
+import tech.bts.cardgame.controller.errors.GameLoadTimeoutException;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.service.GameCache;
+import tech.bts.cardgame.service.SingleFlight;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 50;
+
+    @Test
+    public void load_a_game_once_for_concurrent_misses() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        GameRepositoryMap repo = new GameRepositoryMap() {
+            @Override
+            public Game getById(long id) {
+                loads.incrementAndGet();
+                await(release);
+                return super.getById(id);
+            }
+        };
+        Game game = new Game(Deck.shuffled(1));
+        repo.create(game);
+        GameCache cache = new GameCache(repo, 100, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(10), System::nanoTime);
+
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Game>> games = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                games.add(callers.submit(() -> cache.get(game.getId())));
+            }
+            // Every caller but the loading one waits for the load
+            while (cache.getMetrics().get("coalescedLoads").longValue() < CALLERS - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<Game> loaded : games) {
+                assertThat(loaded.get(), is(sameInstance(game)));
+            }
+            assertThat(loads.get(), is(1));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void share_the_error_of_the_load() throws Exception {
+
+        SingleFlight<Long, String> flight = new SingleFlight<>(10, TimeUnit.SECONDS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = callers.submit(() -> flight.load(1L, key -> {
+                loading.countDown();
+                await(release);
+                throw new IllegalStateException("Database is down");
+            }));
+            loading.await();
+            Future<String> second = callers.submit(() -> flight.load(1L, key -> "not loaded"));
+            while (flight.getCoalesced() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<String> caller : new Future[]{first, second}) {
+                try {
+                    caller.get();
+                    fail();
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause().getMessage(), is("Database is down"));
+                }
+            }
+            // The failed load is over, so the next caller loads again
+            assertThat(flight.load(1L, key -> "loaded"), is("loaded"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stop_waiting_after_the_timeout() throws Exception {
+
+        SingleFlight<Long, String> flight = new SingleFlight<>(50, TimeUnit.MILLISECONDS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = callers.submit(() -> flight.load(1L, key -> {
+                loading.countDown();
+                await(release);
+                return "slow";
+            }));
+            loading.await();
+            try {
+                flight.load(1L, key -> "not loaded");
+                fail();
+            } catch (GameLoadTimeoutException e) {
+                assertThat(flight.getTimeouts(), is(1L));
+            }
+            release.countDown();
+            assertThat(first.get(), is("slow"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
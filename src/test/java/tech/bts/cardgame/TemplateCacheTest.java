@@ -0,0 +1,43 @@
+package tech.bts.cardgame;
+
+import com.github.jknack.handlebars.Template;
+import org.junit.Test;
+import tech.bts.cardgame.controller.TemplateCache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class TemplateCacheTest {
+
+    @Test
+    public void compile_a_template_once() throws Exception {
+
+        TemplateCache templates = new TemplateCache(false);
+        Template template = templates.compile("games");
+
+        assertThat(templates.compile("games"), is(sameInstance(template)));
+    }
+
+    @Test
+    public void compile_a_changed_template_again_when_reloading() throws Exception {
+
+        Path file = new File(getClass().getResource("/templates/greeting.html.hbs").toURI()).toPath();
+        byte[] original = Files.readAllBytes(file);
+        TemplateCache templates = new TemplateCache(true);
+        try {
+            assertThat(templates.compile("greeting").apply(Collections.singletonMap("name", "john")), is("Hello john"));
+
+            Files.write(file, "Bye {{name}}".getBytes());
+            file.toFile().setLastModified(file.toFile().lastModified() + 2000);
+
+            assertThat(templates.compile("greeting").apply(Collections.singletonMap("name", "john")), is("Bye john"));
+        } finally {
+            Files.write(file, original);
+        }
+    }
+}
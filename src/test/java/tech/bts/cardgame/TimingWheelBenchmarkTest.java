@@ -0,0 +1,48 @@
+package tech.bts.cardgame;
+
+import org.junit.After;
+import org.junit.Test;
+import tech.bts.cardgame.service.TimingWheel;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+/**
+ * Time to arm and to cancel a timeout with many armed, from a minute to a month away. 500 000 timeouts by default;
+ * e.g. run with -Dcardgame.benchmark.timeouts=5000000 for five million.
+ */
+public class TimingWheelBenchmarkTest {
+
+    private final TimingWheel wheel = new TimingWheel("benchmark-wheel", 5);
+
+    @After
+    public void close() {
+        wheel.close();
+    }
+
+    @Test
+    public void arm_and_cancel_many_timeouts() {
+
+        int count = Integer.getInteger("cardgame.benchmark.timeouts", 500_000);
+        Random random = new Random(1);
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            timeouts[i] = wheel.schedule(() -> fail("cancelled"), 60_000L + random.nextInt(Integer.MAX_VALUE), TimeUnit.MILLISECONDS);
+        }
+        long armed = System.nanoTime();
+        for (TimingWheel.Timeout timeout : timeouts) {
+            timeout.cancel();
+        }
+        long cancelled = System.nanoTime();
+        System.out.printf("timing wheel, %d timeouts: %.0f ns to arm one, %.0f ns to cancel one%n", count,
+                (double) (armed - start) / count, (double) (cancelled - armed) / count);
+
+        assertThat(wheel.size(), is(0));
+        assertThat((cancelled - armed) / count, is(lessThan(5_000L)));
+    }
+}
@@ -0,0 +1,97 @@
+package tech.bts.cardgame;
+
+import org.junit.After;
+import org.junit.Test;
+import tech.bts.cardgame.service.TimingWheel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    private static final int TIMEOUTS = 10_000;
+
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5);
+
+    @After
+    public void close() {
+        wheel.close();
+    }
+
+    @Test
+    public void run_the_tasks_once_their_delay_is_over() throws Exception {
+
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        long[] elapsed = new long[3];
+        // 500 ms is 100 ticks, beyond the first wheel
+        wheel.schedule(() -> { elapsed[2] = System.nanoTime() - start; ran.add("last"); done.countDown(); }, 500, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { elapsed[0] = System.nanoTime() - start; ran.add("first"); done.countDown(); }, 20, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { elapsed[1] = System.nanoTime() - start; ran.add("second"); done.countDown(); }, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertThat(ran, is(Arrays.asList("first", "second", "last")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(elapsed[0]), is(greaterThanOrEqualTo(20L)));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(elapsed[1]), is(greaterThanOrEqualTo(100L)));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(elapsed[2]), is(greaterThanOrEqualTo(500L)));
+        assertThat(wheel.size(), is(0));
+        assertThat(wheel.expiredCount(), is(3L));
+    }
+
+    @Test
+    public void not_run_a_cancelled_task() throws Exception {
+
+        CountDownLatch ran = new CountDownLatch(1);
+        TimingWheel.Timeout cancelled = wheel.schedule(ran::countDown, 20, TimeUnit.MILLISECONDS);
+        CountDownLatch other = new CountDownLatch(1);
+        TimingWheel.Timeout timeout = wheel.schedule(other::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertThat(cancelled.cancel(), is(true));
+        assertThat(cancelled.cancel(), is(false));
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertThat(ran.getCount(), is(1L));
+        assertThat(timeout.cancel(), is(false));
+    }
+
+    @Test
+    public void run_the_other_tasks_when_one_fails() throws Exception {
+
+        CountDownLatch ran = new CountDownLatch(1);
+        wheel.schedule(() -> { throw new IllegalStateException("failing task"); }, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(ran::countDown, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertThat(wheel.expiredCount(), is(2L));
+    }
+
+    @Test
+    public void arm_and_cancel_many_timeouts_and_sleep_when_none_is_armed() throws Exception {
+
+        Random random = new Random(1);
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[TIMEOUTS];
+        for (int i = 0; i < TIMEOUTS; i++) {
+            // From a minute to a month: all the wheels, and beyond them
+            timeouts[i] = wheel.schedule(() -> fail("cancelled"), 60_000L + random.nextInt(Integer.MAX_VALUE), TimeUnit.MILLISECONDS);
+        }
+        assertThat(wheel.size(), is(TIMEOUTS));
+        for (TimingWheel.Timeout timeout : timeouts) {
+            assertThat(timeout.cancel(), is(true));
+        }
+        assertThat(wheel.size(), is(0));
+
+        // With nothing armed the thread doesn't wake up every tick
+        long wakeUps = wheel.wakeUpCount();
+        Thread.sleep(200);
+        assertThat(wheel.wakeUpCount() - wakeUps, is(lessThan(5L)));
+    }
+}
@@ -0,0 +1,104 @@
+package tech.bts.cardgame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.model.GameUser;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.service.DeckPool;
+import tech.bts.cardgame.service.GameCache;
+import tech.bts.cardgame.service.GameEvents;
+import tech.bts.cardgame.service.GameService;
+import tech.bts.cardgame.service.TurnTimeouts;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class TurnTimeoutsTest {
+
+    private final GameRepositoryMap repo = new GameRepositoryMap();
+    private final GameEvents events = new GameEvents(new ObjectMapper(), 60_000, 64, 10_000, 1);
+    private final TurnTimeouts timeouts = new TurnTimeouts(300, 100, 5);
+    private final GameService gameService = new GameService(repo, new DeckPool(0),
+            new GameCache(repo, 1_000, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(5), System::nanoTime),
+            events, timeouts, 2, 32);
+
+    @After
+    public void close() {
+        gameService.close();
+        events.close();
+        timeouts.close();
+    }
+
+    @Test
+    public void finish_a_game_nobody_joins() throws Exception {
+
+        Game abandoned = gameService.createGame(1);
+        Game joined = gameService.createGame(2);
+        gameService.joinGame(new GameUser(joined.getId(), "john"));
+        gameService.joinGame(new GameUser(joined.getId(), "peter"));
+
+        waitFor(abandoned.getId(), Game.State.FINISHED);
+        assertThat(gameService.getGameById(joined.getId()).getRound(), is(0));
+        assertThat(timeouts.getMetrics().get("gamesReaped"), is(1L));
+    }
+
+    @Test
+    public void play_the_turn_of_a_player_who_stopped_playing() throws Exception {
+
+        long gameId = gameService.createGame(1).getId();
+        GameUser john = new GameUser(gameId, "john");
+        GameUser peter = new GameUser(gameId, "peter");
+        gameService.joinGame(john);
+        gameService.joinGame(peter);
+        for (int i = 0; i < Game.HAND_SIZE; i++) {
+            gameService.pickCard(john);
+            gameService.keep(john);
+        }
+        gameService.pickCard(peter);
+
+        // Peter's card is discarded, then a second one, which fills his hand: the battle is played
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (gameService.getGameById(gameId).getRound() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Game game = gameService.getGameById(gameId);
+        assertThat(game.getRound(), is(not(0)));
+
+        // Then nobody plays, and the game is played to its end
+        waitFor(gameId, Game.State.FINISHED);
+        assertThat(timeouts.getMetrics().get("armed"), is(0));
+    }
+
+    @Test
+    public void give_up_on_a_turn_that_keeps_failing() throws Exception {
+
+        // Nothing left to pick: playing the turns throws EmptyDeckException
+        Game game = new Game(new Deck());
+        game.join("john");
+        game.join("peter");
+        repo.create(game);
+        timeouts.resumed(GameSummary.of(game));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!timeouts.getMetrics().get("abandonedDeadlines").equals(2L) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(timeouts.getMetrics().get("abandonedDeadlines"), is(2L));
+        assertThat(timeouts.getMetrics().get("failedExpiries"), is(2L * TurnTimeouts.MAXIMUM_ATTEMPTS));
+        assertThat(timeouts.getMetrics().get("armed"), is(0));
+    }
+
+    private void waitFor(long gameId, Game.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (gameService.getGameById(gameId).getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(gameService.getGameById(gameId).getState(), is(state));
+    }
+}
@@ -0,0 +1,192 @@
+package tech.bts.cardgame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tech.bts.cardgame.model.Deck;
+import tech.bts.cardgame.model.Game;
+import tech.bts.cardgame.model.GameEvent;
+import tech.bts.cardgame.model.GameSearch;
+import tech.bts.cardgame.model.GameSummary;
+import tech.bts.cardgame.repository.GameRepositoryMap;
+import tech.bts.cardgame.repository.WriteBehindGameRepository;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class WriteBehindGameRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void save_only_the_latest_state_of_each_game_in_one_batch() throws Exception {
+
+        CountingStore store = new CountingStore();
+        try (WriteBehindGameRepository repo = writeBehind(store, folder.getRoot().toPath())) {
+            Game first = new Game(Deck.shuffled(1));
+            Game second = new Game(Deck.shuffled(2));
+            repo.create(first);
+            repo.create(second);
+            first.join("john");
+            repo.update(first);
+            first.join("peter");
+            repo.update(first);
+            second.join("mary");
+            repo.update(second);
+
+            assertThat(repo.getQueueDepth(), is(2));
+            assertThat(store.batches.get(), is(0));
+
+            repo.flush();
+
+            assertThat(store.batches.get(), is(1));
+            assertThat(store.saved.get(), is(2));
+            assertThat(store.getById(first.getId()).getPlayerNames(), is(first.getPlayerNames()));
+            assertThat(store.getById(first.getId()).getState(), is(Game.State.PLAYING));
+            assertThat(store.getById(second.getId()).getPlayerNames(), is(second.getPlayerNames()));
+        }
+    }
+
+    @Test
+    public void list_the_latest_state_of_the_games_without_flushing() throws Exception {
+
+        CountingStore store = new CountingStore();
+        try (WriteBehindGameRepository repo = writeBehind(store, folder.getRoot().toPath())) {
+            Game game = new Game(Deck.shuffled(1));
+            repo.create(game);
+            game.join("john");
+            repo.update(game);
+            game.join("peter");
+            repo.update(game);
+
+            List<GameSummary> playing = repo.streamSummaries(new GameSearch().setState(Game.State.PLAYING))
+                    .collect(Collectors.toList());
+            List<GameSummary> open = repo.streamSummaries(new GameSearch().setState(Game.State.OPEN))
+                    .collect(Collectors.toList());
+
+            assertThat(store.batches.get(), is(0));
+            // The store only has it as open: the search finds it there, and leaves it out as it is playing now
+            assertThat(playing.isEmpty(), is(true));
+            assertThat(open.isEmpty(), is(true));
+            assertThat(repo.streamSummaries(new GameSearch()).collect(Collectors.toList()),
+                    is(Collections.singletonList(GameSummary.of(game))));
+            assertThat(repo.getAll().findFirst().get(), is(sameInstance(game)));
+        }
+    }
+
+    @Test
+    public void retry_a_failed_flush_with_the_newer_updates() throws Exception {
+
+        CountingStore store = new CountingStore();
+        try (WriteBehindGameRepository repo = writeBehind(store, folder.getRoot().toPath())) {
+            Game game = new Game(Deck.shuffled(1));
+            repo.create(game);
+            game.join("john");
+            repo.update(game);
+
+            store.failing.set(true);
+            try {
+                repo.flush();
+                fail();
+            } catch (IllegalStateException e) {
+                assertThat(repo.getQueueDepth(), is(1));
+            }
+
+            game.join("peter");
+            repo.update(game);
+            store.failing.set(false);
+            repo.flush();
+
+            assertThat(repo.getQueueDepth(), is(0));
+            assertThat(store.getById(game.getId()).getPlayerNames(), is(game.getPlayerNames()));
+        }
+    }
+
+    @Test
+    public void save_the_journaled_updates_after_a_crash() {
+
+        Path journal = folder.getRoot().toPath();
+        CountingStore crashed = new CountingStore();
+        WriteBehindGameRepository repo = writeBehind(crashed, journal);
+        Game game = new Game(Deck.shuffled(5));
+        repo.create(game);
+        game.join("john");
+        game.join("peter");
+        game.pickCard("john");
+        game.keep("john");
+        // The store is down, so the update is only in the journal when the process dies
+        crashed.failing.set(true);
+        repo.update(game);
+
+        CountingStore store = new CountingStore();
+        try (WriteBehindGameRepository restarted = writeBehind(store, journal)) {
+            Game saved = store.getById(game.getId());
+
+            assertThat(saved.getPlayerNames(), is(game.getPlayerNames()));
+            assertThat(saved.getDeck().getDeck(), is(game.getDeck().getDeck()));
+            assertThat(saved.getPlayer("john").getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+            assertThat(restarted.getQueueDepth(), is(0));
+        }
+    }
+
+    @Test
+    public void log_every_event_of_the_journaled_updates_after_a_crash() {
+
+        Path journal = folder.getRoot().toPath();
+        CountingStore store = new CountingStore();
+        WriteBehindGameRepository crashed = writeBehind(store, journal);
+        Game game = new Game(Deck.shuffled(5));
+        crashed.create(game);
+        game.join("john");
+        crashed.update(game);
+        crashed.flush();
+        game.join("peter");
+        crashed.update(game);
+        game.pickCard("john");
+        game.keep("john");
+        crashed.update(game);
+        // Not flushed: the store only has the first update when the process dies
+
+        try (WriteBehindGameRepository restarted = writeBehind(store, journal)) {
+            List<GameEvent> events = store.getEvents(game.getId(), 0, game.getVersion());
+
+            assertThat(events.size(), is((int) game.getVersion()));
+            for (int i = 0; i < events.size(); i++) {
+                assertThat(events.get(i).getVersion(), is(i + 1L));
+            }
+            Game replayed = store.replay(game.getId(), game.getVersion());
+            assertThat(replayed.getPlayer("john").getHand().getHand(), is(game.getPlayer("john").getHand().getHand()));
+        }
+    }
+
+    private WriteBehindGameRepository writeBehind(CountingStore store, Path journal) {
+        // Long interval and size, so only the test flushes
+        return new WriteBehindGameRepository(store, journal, 1024, true, 60_000, 1_000);
+    }
+
+    private static class CountingStore extends GameRepositoryMap {
+
+        private final AtomicInteger batches = new AtomicInteger();
+        private final AtomicInteger saved = new AtomicInteger();
+        private final AtomicBoolean failing = new AtomicBoolean();
+
+        @Override
+        public void saveAll(Collection<Game> games) {
+            if (failing.get()) {
+                throw new IllegalStateException("Store is down");
+            }
+            batches.incrementAndGet();
+            saved.addAndGet(games.size());
+            super.saveAll(games);
+        }
+    }
+}